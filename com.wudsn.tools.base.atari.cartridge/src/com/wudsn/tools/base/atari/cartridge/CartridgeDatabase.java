@@ -20,25 +20,61 @@
 package com.wudsn.tools.base.atari.cartridge;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
+import com.wudsn.tools.base.Messages;
 import com.wudsn.tools.base.atari.CartridgeType;
 import com.wudsn.tools.base.common.CoreException;
 import com.wudsn.tools.base.common.FileUtility;
+import com.wudsn.tools.base.common.MultiDigest;
 import com.wudsn.tools.base.common.ResourceUtility;
 import com.wudsn.tools.base.common.StringUtility;
-import com.wudsn.tools.base.atari.cartridge.CartridgeDatabaseEntry.Key;
 
 /**
- * Cartridge Database.
+ * Cartridge Database. The database is maintained as CSV file and is also
+ * serialized into a compact binary file, which is loaded preferably because it
+ * contains the sorted index tables and requires no parsing.
+ * 
+ * The content is held as an immutable {@link CartridgeDatabaseSnapshot} which
+ * is replaced atomically, so the database can be read by any number of threads
+ * without locking, also while it is loaded.
+ * 
+ * The binary file has the following structure, all values are big endian:
+ * <ul>
+ * <li>INT magic number {@link #BINARY_FILE_MAGIC}</li>
+ * <li>INT format version {@link #BINARY_FILE_VERSION}</li>
+ * <li>LONG length of the CSV file from which the binary file was created. The
+ * binary file is only used if it matches the length of the CSV file
+ * {@link #FILE_PATH}, so changes to the CSV file are not hidden by an outdated
+ * binary file. The length is taken from the file system or the archive
+ * directory, so the CSV file is not read if the binary file is used. Changes
+ * which keep the length are not detected.</li>
+ * <li>INT entry count, followed by the entries, each consisting of INT size in
+ * KB, INT CRC32, SHORT cartridge type numeric id and the strings MD5, title,
+ * publisher, date and source. Strings are stored as unsigned SHORT length
+ * followed by the UTF-8 bytes.</li>
+ * <li>INT size and CRC32 table count, followed by the LONG keys (size in KB in
+ * the upper 32 bits, CRC32 in the lower 32 bits) sorted ascending and then the
+ * INT entry indexes.</li>
+ * <li>INT MD5 table count, followed by pairs of LONG values with the 16 bytes
+ * of the MD5 digests sorted ascending and then the INT entry indexes.</li>
+ * </ul>
  * 
  * @author Peter Dell
  */
@@ -46,91 +82,343 @@ public final class CartridgeDatabase {
 
 	private static final char QUOTE_CHAR = '\"';
 	public final static String FILE_PATH = "data/CartridgeDatabase.csv";
+	public final static String BINARY_FILE_PATH = "data/CartridgeDatabase.bin";
+	public final static int BINARY_FILE_MAGIC = 0x57434442; // "WCDB"
+	public final static int BINARY_FILE_VERSION = 3;
+	private final static Charset UTF_8 = Charset.forName("UTF-8");
 	private final static char SEPARATOR_CHAR = ';';
 	private final static String NEW_LINE_CHARS = "\r\n";
 
-	private List<CartridgeDatabaseEntry> entries;
-	private TreeMap<Key, List<CartridgeDatabaseEntry>> entriesBySizeAndCRC32;
-	private TreeMap<String, CartridgeDatabaseEntry> entriesByMD5;
-	private int knownCartridgeTypesCount;
+	/**
+	 * Parsed content of a CSV file. The content of external files is kept, so
+	 * only changed files have to be parsed again when the database is
+	 * reloaded.
+	 */
+	private static final class CSVFile {
+		final long lastModified;
+		final long length;
+		final List<CartridgeDatabaseEntry> entries;
+		final BitSet hasCRC32;
+
+		CSVFile(long lastModified, long length) {
+			this.lastModified = lastModified;
+			this.length = length;
+			entries = new ArrayList<CartridgeDatabaseEntry>();
+			hasCRC32 = new BitSet();
+		}
+
+		void addEntries(CartridgeDatabaseSnapshot.Builder builder) {
+			for (int i = 0; i < entries.size(); i++) {
+				builder.addEntry(entries.get(i), hasCRC32.get(i));
+			}
+		}
+	}
+
+	private volatile CartridgeDatabaseSnapshot snapshot;
+
+	// Builder with the entries added since the last publication, guarded by
+	// "this".
+	private CartridgeDatabaseSnapshot.Builder builder;
+
+	// Parsed external CSV files by absolute path in the order of the last
+	// load, guarded by itself.
+	private final Map<String, CSVFile> csvFiles;
+
+	// Indicates if the current snapshot was loaded from the external CSV
+	// files, guarded by "csvFiles".
+	private boolean csvFilesLoaded;
 
 	public CartridgeDatabase() {
-		entries = new ArrayList<CartridgeDatabaseEntry>();
-		entriesBySizeAndCRC32 = new TreeMap<Key, List<CartridgeDatabaseEntry>>();
-		entriesByMD5 = new TreeMap<String, CartridgeDatabaseEntry>();
+		snapshot = CartridgeDatabaseSnapshot.EMPTY;
+		csvFiles = new LinkedHashMap<String, CSVFile>();
 	}
 
-	private void clear() {
-		entries.clear();
-		entriesBySizeAndCRC32.clear();
-		entriesByMD5.clear();
-		knownCartridgeTypesCount = 0;
+	/**
+	 * Gets the current snapshot of the database. Callers which perform several
+	 * lookups that must be consistent with each other should use the same
+	 * snapshot for all of them.
+	 * 
+	 * @return The snapshot, not <code>null</code>.
+	 */
+	public CartridgeDatabaseSnapshot getSnapshot() {
+		return snapshot;
 	}
 
 	public List<CartridgeDatabaseEntry> getEntries() {
-		return Collections.unmodifiableList(entries);
+		return snapshot.getEntries();
 	}
 
 	public int getKnownTitelsCount() {
-		return entries.size();
+		return snapshot.getKnownTitelsCount();
 	}
 
 	public int getKnownCartridgeTypesCount() {
-		return knownCartridgeTypesCount;
+		return snapshot.getKnownCartridgeTypesCount();
 	}
 
 	public List<CartridgeDatabaseEntry> getEntriesBySizeAndCRC32(int sizeInKB, long crc32) {
-		Key key = new Key(sizeInKB, crc32);
-		List<CartridgeDatabaseEntry> result = entriesBySizeAndCRC32.get(key);
-		if (result != null) {
-			result = Collections.unmodifiableList(result);
-		} else {
-			result = Collections.emptyList();
-		}
-		return result;
+		return snapshot.getEntriesBySizeAndCRC32(sizeInKB, crc32);
+	}
+
+	/**
+	 * See {@link CartridgeDatabaseSnapshot#getEntryBySizeAndCRC32(int, long)}.
+	 * 
+	 * @param sizeInKB
+	 *            The size in KB.
+	 * @param crc32
+	 *            The CRC32.
+	 * @return The first entry or <code>null</code>.
+	 */
+	public CartridgeDatabaseEntry getEntryBySizeAndCRC32(int sizeInKB, long crc32) {
+		return snapshot.getEntryBySizeAndCRC32(sizeInKB, crc32);
+	}
+
+	/**
+	 * See {@link CartridgeDatabaseSnapshot#getEntriesByDigest(MultiDigest.Result)}.
+	 * 
+	 * @param digest
+	 *            The digests of the ROM content without header, not
+	 *            <code>null</code>.
+	 * @return The unmodifiable list of entries, may be empty, not
+	 *         <code>null</code>.
+	 */
+	public List<CartridgeDatabaseEntry> getEntriesByDigest(MultiDigest.Result digest) {
+		return snapshot.getEntriesByDigest(digest);
+	}
+
+	/**
+	 * See {@link CartridgeDatabaseSnapshot#getEntriesByContent(byte[])}.
+	 * 
+	 * @param content
+	 *            The ROM content without header, not <code>null</code>.
+	 * @return The unmodifiable list of entries, may be empty, not
+	 *         <code>null</code>.
+	 */
+	public List<CartridgeDatabaseEntry> getEntriesByContent(byte[] content) {
+		return snapshot.getEntriesByContent(content);
 	}
 
+	/**
+	 * See {@link CartridgeDatabaseSnapshot#getEntryByMD5(String)}.
+	 * 
+	 * @param md5
+	 *            The MD5 digest as string of 32 hex digits, not
+	 *            <code>null</code>.
+	 * @return The entry or <code>null</code>.
+	 */
 	public CartridgeDatabaseEntry getEntryByMD5(String md5) {
-		if (md5 == null) {
-			throw new IllegalArgumentException("Parameter 'md5' must not be null.");
-		}
-		return entriesByMD5.get(md5);
+		return snapshot.getEntryByMD5(md5);
 	}
 
-	public CartridgeDatabaseEntry addEntry(int sizeInKB, boolean hasCRC32, long crc32, String md5, String title,
-			String publisher, String date, CartridgeType cartridgeType, String source) {
-		CartridgeDatabaseEntry entry = new CartridgeDatabaseEntry(sizeInKB, crc32, md5, title, publisher, date,
-				cartridgeType, source);
-		entries.add(entry);
-		if (hasCRC32) {
-			Key key = entry.getKey();
-			List<CartridgeDatabaseEntry> entries = entriesBySizeAndCRC32.get(key);
-			if (entries == null) {
-				entries = new ArrayList<CartridgeDatabaseEntry>();
-				entriesBySizeAndCRC32.put(key, entries);
-			}
-			entries.add(entry);
-			// System.out.println("List " + System.identityHashCode(entries)
-			// + " for " + key + " as " + entries.size() + " entries");
+	/**
+	 * See {@link CartridgeDatabaseSnapshot#getEntryByMD5(byte[])}.
+	 * 
+	 * @param md5
+	 *            The 16 bytes of the MD5 digest, not <code>null</code>.
+	 * @return The entry or <code>null</code>.
+	 */
+	public CartridgeDatabaseEntry getEntryByMD5(byte[] md5) {
+		return snapshot.getEntryByMD5(md5);
+	}
 
+	/**
+	 * Adds an entry. The entry becomes visible to readers with the next call of
+	 * {@link #publish()}.
+	 * 
+	 * @return The new entry, not <code>null</code>.
+	 */
+	public synchronized CartridgeDatabaseEntry addEntry(int sizeInKB, boolean hasCRC32, long crc32, String md5,
+			String title, String publisher, String date, CartridgeType cartridgeType, String source) {
+		if (builder == null) {
+			builder = new CartridgeDatabaseSnapshot.Builder(snapshot);
 		}
-		if (StringUtility.isSpecified(md5)) {
-			entriesByMD5.put(entry.getMD5HexString(), entry);
+		return builder.addEntry(sizeInKB, hasCRC32, crc32, md5, title, publisher, date, cartridgeType, source);
+	}
+
+	/**
+	 * Adds an entry for the content of a ROM, see
+	 * {@link CartridgeDatabaseSnapshot.Builder#addEntry(byte[], String, String, String, CartridgeType, String)}
+	 * . The entry becomes visible to readers with the next call of
+	 * {@link #publish()}.
+	 * 
+	 * @return The new entry, not <code>null</code>.
+	 */
+	public synchronized CartridgeDatabaseEntry addEntry(byte[] content, String title, String publisher,
+			String date, CartridgeType cartridgeType, String source) {
+		if (builder == null) {
+			builder = new CartridgeDatabaseSnapshot.Builder(snapshot);
 		}
-		if (entry.getCartridgeType() != CartridgeType.UNKNOWN) {
-			knownCartridgeTypesCount++;
+		return builder.addEntry(content, title, publisher, date, cartridgeType, source);
+	}
+
+	/**
+	 * Publishes the entries added since the last publication as new snapshot.
+	 */
+	public synchronized void publish() {
+		if (builder != null) {
+			snapshot = builder.build();
+			builder = null;
 		}
+	}
 
-		return entry;
+	/**
+	 * Replaces the current snapshot and discards all entries which have not
+	 * been published yet.
+	 * 
+	 * @param newSnapshot
+	 *            The new snapshot, not <code>null</code>.
+	 */
+	private synchronized void publish(CartridgeDatabaseSnapshot newSnapshot) {
+		builder = null;
+		snapshot = newSnapshot;
 	}
 
+	/**
+	 * Loads the database from the class path. The binary file
+	 * {@link #BINARY_FILE_PATH} is used if it exists, has the current format
+	 * version and was created from a CSV file with the length of the current
+	 * CSV file {@link #FILE_PATH}. Otherwise the CSV file is parsed. The loaded
+	 * database is published as a whole, so readers never see a partially loaded
+	 * database.
+	 */
 	public void load() {
-		clear();
+		synchronized (csvFiles) {
+			csvFiles.clear();
+			csvFilesLoaded = false;
+		}
+
+		byte[] binaryContent = ResourceUtility.loadResourceAsByteArray(BINARY_FILE_PATH);
+		if (binaryContent != null) {
+			CartridgeDatabaseSnapshot newSnapshot = loadBinary(binaryContent,
+					ResourceUtility.getResourceLength(FILE_PATH));
+			if (newSnapshot != null) {
+				publish(newSnapshot);
+				return;
+			}
+		}
 
 		String content = ResourceUtility.loadResourceAsString(FILE_PATH);
 		if (content == null) {
+			publish(CartridgeDatabaseSnapshot.EMPTY);
 			return;
 		}
+		CSVFile csvFile = new CSVFile(0, content.length());
+		parseCSV(FILE_PATH, content, csvFile);
+		CartridgeDatabaseSnapshot.Builder csvBuilder = new CartridgeDatabaseSnapshot.Builder();
+		csvFile.addEntries(csvBuilder);
+		publish(csvBuilder.build());
+	}
+
+	/**
+	 * Loads the database from an external CSV file or from all CSV files in a
+	 * folder. The files of a folder are combined in the order of their names,
+	 * so later files act as overlays which extend the earlier ones. The
+	 * parsed content of the files is kept and only files which have changed
+	 * since the last call are parsed again. If the files have not changed at
+	 * all, the current snapshot is kept. Otherwise the new database is
+	 * published as a whole. If a folder which contained CSV files contains
+	 * none, for example while the files are replaced, the current snapshot is
+	 * kept and an exception is thrown.
+	 * 
+	 * @param fileOrFolder
+	 *            The CSV file or the folder with the CSV files, not
+	 *            <code>null</code>.
+	 * @return <code>true</code> if a new snapshot was published,
+	 *         <code>false</code> if nothing has changed.
+	 * @throws CoreException
+	 *             If a file cannot be read or a folder contains no CSV files
+	 *             anymore.
+	 */
+	public boolean load(File fileOrFolder) throws CoreException {
+		if (fileOrFolder == null) {
+			throw new IllegalArgumentException("Parameter 'fileOrFolder' must not be null.");
+		}
+
+		List<File> files = getCSVFiles(fileOrFolder);
+		synchronized (csvFiles) {
+			if (files.isEmpty() && csvFilesLoaded && !csvFiles.isEmpty()) {
+				throw new CoreException(Messages.E223, fileOrFolder.getAbsolutePath());
+			}
+			boolean changed = false;
+			Map<String, CSVFile> newCSVFiles = new LinkedHashMap<String, CSVFile>();
+			for (File file : files) {
+				String filePath = file.getAbsolutePath();
+				long lastModified = file.lastModified();
+				long length = file.length();
+				CSVFile csvFile = csvFiles.get(filePath);
+				if (csvFile == null || csvFile.lastModified != lastModified || csvFile.length != length) {
+					String content = FileUtility.readString(file, FileUtility.MAX_SIZE_UNLIMITED);
+					csvFile = new CSVFile(lastModified, length);
+					parseCSV(filePath, content, csvFile);
+					changed = true;
+				}
+				newCSVFiles.put(filePath, csvFile);
+			}
+
+			// Files may also have been added, removed or renamed.
+			if (csvFilesLoaded && !changed
+					&& new ArrayList<String>(newCSVFiles.keySet()).equals(new ArrayList<String>(csvFiles.keySet()))) {
+				return false;
+			}
+
+			CartridgeDatabaseSnapshot.Builder csvBuilder = new CartridgeDatabaseSnapshot.Builder();
+			for (CSVFile csvFile : newCSVFiles.values()) {
+				csvFile.addEntries(csvBuilder);
+			}
+			publish(csvBuilder.build());
+			csvFiles.clear();
+			csvFiles.putAll(newCSVFiles);
+			csvFilesLoaded = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the CSV files to be loaded.
+	 * 
+	 * @param fileOrFolder
+	 *            The CSV file or the folder with the CSV files, not
+	 *            <code>null</code>.
+	 * @return The modifiable list of files sorted by name, may be empty, not
+	 *         <code>null</code>.
+	 */
+	private static List<File> getCSVFiles(File fileOrFolder) {
+		List<File> result = new ArrayList<File>();
+		if (!fileOrFolder.isDirectory()) {
+			result.add(fileOrFolder);
+			return result;
+		}
+		File[] files = fileOrFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && file.getName().toLowerCase().endsWith(".csv")) {
+					result.add(file);
+				}
+			}
+		}
+		Collections.sort(result, new Comparator<File>() {
+
+			@Override
+			public int compare(File o1, File o2) {
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Parses the content of a CSV file.
+	 * 
+	 * @param filePath
+	 *            The file path to be used in error messages, not
+	 *            <code>null</code>.
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param csvFile
+	 *            The CSV file to which the entries are added, not
+	 *            <code>null</code>.
+	 */
+	private static void parseCSV(String filePath, String content, CSVFile csvFile) {
 		BufferedReader reader = new BufferedReader(new StringReader(content));
 		String line = "";
 		try {
@@ -162,16 +450,183 @@ public final class CartridgeDatabase {
 				if (cartridgeType == null) {
 					throw new IllegalStateException("No cartrigde type for numeric ID " + cartridgeTypeId);
 				}
-				String source = line.substring(index5 + 1);
-				addEntry(sizeInKB, hasCRC32, crc32, md5, title, publisher, date, cartridgeType, source);
+				String source = line.substring(index7 + 1);
+				if (hasCRC32) {
+					csvFile.hasCRC32.set(csvFile.entries.size());
+				}
+				csvFile.entries.add(new CartridgeDatabaseEntry(sizeInKB, crc32, md5, title, publisher, date,
+						cartridgeType, source));
 
 			}
 		} catch (StringIndexOutOfBoundsException ex) {
-			throw new RuntimeException("Error while processing line: '" + line + "'", ex);
+			throw new RuntimeException("Error while processing line: '" + line + "' of '" + filePath + "'", ex);
 		} catch (IOException ex) {
 			throw new RuntimeException(ex);
 		}
-		// System.out.println(entriesByCRC32.values().toString());
+	}
+
+	/**
+	 * Loads the database from the content of a binary file.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param csvLength
+	 *            The length of the CSV file or <code>-1</code> if there is no
+	 *            CSV file or its length is not known.
+	 * @return The snapshot with the content or <code>null</code> if the content
+	 *         is no binary database file, has a different format version or was
+	 *         not created from a CSV file with the given length.
+	 */
+	private static CartridgeDatabaseSnapshot loadBinary(byte[] content, long csvLength) {
+		ByteBuffer buffer = ByteBuffer.wrap(content);
+		if (buffer.remaining() < 16 || buffer.getInt() != BINARY_FILE_MAGIC
+				|| buffer.getInt() != BINARY_FILE_VERSION) {
+			return null;
+		}
+		long binaryCSVLength = buffer.getLong();
+		if (csvLength >= 0 && binaryCSVLength != csvLength) {
+			return null;
+		}
+		try {
+			int entryCount = buffer.getInt();
+			List<CartridgeDatabaseEntry> entries = new ArrayList<CartridgeDatabaseEntry>(entryCount);
+			int knownCartridgeTypesCount = 0;
+			for (int i = 0; i < entryCount; i++) {
+				int sizeInKB = buffer.getInt();
+				long crc32 = buffer.getInt() & 0xffffffffL;
+				int cartridgeTypeNumericId = buffer.getShort();
+				String md5 = readString(buffer);
+				String title = readString(buffer);
+				String publisher = readString(buffer);
+				String date = readString(buffer);
+				String source = readString(buffer);
+				CartridgeType cartridgeType = CartridgeType.getInstance(cartridgeTypeNumericId);
+				if (cartridgeType == null) {
+					throw new IllegalStateException("No cartrigde type for numeric ID " + cartridgeTypeNumericId);
+				}
+				CartridgeDatabaseEntry entry = new CartridgeDatabaseEntry(sizeInKB, crc32, md5, title, publisher,
+						date, cartridgeType, source);
+				entries.add(entry);
+				if (cartridgeType != CartridgeType.UNKNOWN) {
+					knownCartridgeTypesCount++;
+				}
+			}
+
+			// The size and CRC32 table is already sorted.
+			int count = buffer.getInt();
+			long[] keys = new long[count];
+			buffer.asLongBuffer().get(keys);
+			buffer.position(buffer.position() + count * 8);
+			int[] entryIndexes = new int[count];
+			buffer.asIntBuffer().get(entryIndexes);
+			buffer.position(buffer.position() + count * 4);
+			SizeAndCRC32Index entriesBySizeAndCRC32 = new SizeAndCRC32Index(keys, entryIndexes);
+
+			// The MD5 table contains only the last entry per digest.
+			MD5Index entriesByMD5 = new MD5Index();
+			count = buffer.getInt();
+			long[] digests = new long[count * 2];
+			buffer.asLongBuffer().get(digests);
+			buffer.position(buffer.position() + count * 16);
+			for (int i = 0; i < count; i++) {
+				entriesByMD5.add(digests[i * 2], digests[i * 2 + 1], buffer.getInt());
+			}
+			return new CartridgeDatabaseSnapshot(entries, entriesBySizeAndCRC32, entriesByMD5,
+					knownCartridgeTypesCount);
+		} catch (RuntimeException ex) {
+			throw new RuntimeException("Error while processing binary file '" + BINARY_FILE_PATH + "'", ex);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xffff;
+		String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+		buffer.position(buffer.position() + length);
+		return result;
+	}
+
+	/**
+	 * Saves the current snapshot of the database as binary file, see
+	 * {@link CartridgeDatabase} for the format.
+	 * 
+	 * @param file
+	 *            The file, not <code>null</code>.
+	 * @param csvFile
+	 *            The CSV file to which the current snapshot has been saved with
+	 *            {@link #save(File)}, not <code>null</code>. Its length is
+	 *            stored in the binary file.
+	 * @throws CoreException
+	 *             If the file cannot be written.
+	 */
+	public void saveBinary(File file, File csvFile) throws CoreException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		if (csvFile == null) {
+			throw new IllegalArgumentException("Parameter 'csvFile' must not be null.");
+		}
+
+		CartridgeDatabaseSnapshot currentSnapshot = snapshot;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bos);
+		try {
+			dos.writeInt(BINARY_FILE_MAGIC);
+			dos.writeInt(BINARY_FILE_VERSION);
+			dos.writeLong(csvFile.length());
+			List<CartridgeDatabaseEntry> entries = currentSnapshot.getEntries();
+			dos.writeInt(entries.size());
+			for (CartridgeDatabaseEntry entry : entries) {
+				dos.writeInt(entry.getSizeInKB());
+				dos.writeInt((int) entry.getCRC32());
+				dos.writeShort(entry.getCartridgeType().getNumericId());
+				writeString(dos, entry.getMD5HexString());
+				writeString(dos, entry.getTitle());
+				writeString(dos, entry.getPublisher());
+				writeString(dos, entry.getDate());
+				writeString(dos, entry.getSource());
+			}
+
+			int count = currentSnapshot.getSizeAndCRC32Count();
+			dos.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				dos.writeLong(currentSnapshot.getSizeAndCRC32KeyAt(i));
+			}
+			for (int i = 0; i < count; i++) {
+				dos.writeInt(currentSnapshot.getSizeAndCRC32EntryIndexAt(i));
+			}
+
+			// Sort by the upper case MD5 hex string, which is equivalent to
+			// sorting by the unsigned digest bytes. Only complete digests with
+			// 32 hex digits are contained and the last entry per digest wins.
+			Map<String, Integer> md5EntryIndexes = new TreeMap<String, Integer>();
+			for (int i = 0; i < entries.size(); i++) {
+				String md5 = entries.get(i).getMD5HexString().toUpperCase();
+				if (MD5Index.isHexString(md5)) {
+					md5EntryIndexes.put(md5, Integer.valueOf(i));
+				}
+			}
+			dos.writeInt(md5EntryIndexes.size());
+			for (String md5 : md5EntryIndexes.keySet()) {
+				dos.writeLong(MD5Index.getLong(md5, 0));
+				dos.writeLong(MD5Index.getLong(md5, 16));
+			}
+			for (Integer entryIndex : md5EntryIndexes.values()) {
+				dos.writeInt(entryIndex.intValue());
+			}
+			dos.close();
+		} catch (IOException ex) {
+			throw new RuntimeException("Error during serialization", ex);
+		}
+		FileUtility.writeBytes(file, bos.toByteArray());
+	}
+
+	private static void writeString(DataOutputStream dos, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		if (bytes.length > 0xffff) {
+			throw new IllegalArgumentException("String '" + value + "' is too long.");
+		}
+		dos.writeShort(bytes.length);
+		dos.write(bytes);
 	}
 
 	public void save(File file) throws CoreException {
@@ -183,7 +638,7 @@ public final class CartridgeDatabase {
 		PrintWriter printWriter = new PrintWriter(writer);
 		printWriter.println("sep=" + SEPARATOR_CHAR);
 		try {
-			for (CartridgeDatabaseEntry entry : entries) {
+			for (CartridgeDatabaseEntry entry : snapshot.getEntries()) {
 				printWriter.print(entry.getSizeInKB());
 				printWriter.print(SEPARATOR_CHAR);
 				printWriter.print("'");
@@ -213,6 +213,7 @@ public final class CartridgeDatabaseCreator extends Main {
 		final String krotkiList = baseDir + "/tst/crc/Atari 8-bit ROM list/List - Comparison.csv";
 		final String maxFlashList = baseDir + "/tst/crc/Maxflash/romlib.ini";
 		final String databaseFile = baseDir + "/src/" + CartridgeDatabase.FILE_PATH;
+		final String binaryDatabaseFile = baseDir + "/src/" + CartridgeDatabase.BINARY_FILE_PATH;
 
 		logSkipped = true;
 
@@ -233,12 +234,17 @@ public final class CartridgeDatabaseCreator extends Main {
 		if (addMaxFlashList) {
 			addMaxflashList(maxFlashList, database);
 		}
+		database.publish();
 		try {
 			File file = new File(databaseFile);
 			database.save(file);
 			logInfo("CRC database saved to '" + file + "' with " + TextUtility.formatAsDecimal(file.length())
 					+ " bytes, " + TextUtility.formatAsDecimal(database.getKnownTitelsCount()) + " known entries and "
 					+ TextUtility.formatAsDecimal(database.getKnownCartridgeTypesCount()) + " known content types.");
+			File binaryFile = new File(binaryDatabaseFile);
+			database.saveBinary(binaryFile, file);
+			logInfo("Binary CRC database saved to '" + binaryFile + "' with "
+					+ TextUtility.formatAsDecimal(binaryFile.length()) + " bytes.");
 		} catch (CoreException ex) {
 			logError(ex.getMessage());
 		}
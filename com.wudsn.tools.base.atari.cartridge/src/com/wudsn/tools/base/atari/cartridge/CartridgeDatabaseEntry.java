@@ -46,7 +46,7 @@ public final class CartridgeDatabaseEntry {
 
 		@Override
 		public int hashCode() {
-			return sizeInKB + (int) crc32;
+			return SizeAndCRC32Index.getHashCode(SizeAndCRC32Index.getKey(sizeInKB, crc32));
 		}
 
 		@Override
@@ -82,14 +82,14 @@ public final class CartridgeDatabaseEntry {
 		}
 	}
 
-	private int sizeInKB;
-	private long crc32;
-	private String md5HexString;
-	private String title;
-	private String publisher;
-	private String date;
-	private CartridgeType cartridgeType;
-	private String source;
+	private final int sizeInKB;
+	private final long crc32;
+	private final String md5HexString;
+	private final String title;
+	private final String publisher;
+	private final String date;
+	private final CartridgeType cartridgeType;
+	private final String source;
 
 	CartridgeDatabaseEntry(int sizeInKB, long crc32, String md5, String title, String publisher, String date,
 			CartridgeType cartridgeType, String source) {
@@ -179,4 +179,4 @@ public final class CartridgeDatabaseEntry {
 				+ " cartridgeType=" + cartridgeType.getId() + " source=" + source;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari.cartridge;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.KB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.wudsn.tools.base.atari.CartridgeType;
+import com.wudsn.tools.base.common.MultiDigest;
+
+/**
+ * Immutable state of the cartridge database with its entries and indexes. A
+ * snapshot can be shared freely between threads and all read methods are
+ * lock-free. New snapshots are created with a {@link Builder}.
+ * 
+ * @author Peter Dell
+ */
+public final class CartridgeDatabaseSnapshot {
+
+	/**
+	 * Builder for snapshots. A builder is not thread-safe.
+	 */
+	public static final class Builder {
+
+		private List<CartridgeDatabaseEntry> entries;
+		private SizeAndCRC32Index entriesBySizeAndCRC32;
+		private MD5Index entriesByMD5;
+		private int knownCartridgeTypesCount;
+
+		/**
+		 * Creates an empty builder.
+		 */
+		public Builder() {
+			clear();
+		}
+
+		/**
+		 * Creates a builder which starts with the entries of a snapshot.
+		 * 
+		 * @param snapshot
+		 *            The snapshot, not <code>null</code>.
+		 */
+		public Builder(CartridgeDatabaseSnapshot snapshot) {
+			if (snapshot == null) {
+				throw new IllegalArgumentException("Parameter 'snapshot' must not be null.");
+			}
+			entries = new ArrayList<CartridgeDatabaseEntry>(snapshot.entries);
+			entriesBySizeAndCRC32 = new SizeAndCRC32Index(snapshot.entriesBySizeAndCRC32);
+			entriesByMD5 = new MD5Index(snapshot.entriesByMD5);
+			knownCartridgeTypesCount = snapshot.knownCartridgeTypesCount;
+		}
+
+		private void clear() {
+			entries = new ArrayList<CartridgeDatabaseEntry>();
+			entriesBySizeAndCRC32 = new SizeAndCRC32Index();
+			entriesByMD5 = new MD5Index();
+			knownCartridgeTypesCount = 0;
+		}
+
+		public CartridgeDatabaseEntry addEntry(int sizeInKB, boolean hasCRC32, long crc32, String md5, String title,
+				String publisher, String date, CartridgeType cartridgeType, String source) {
+			CartridgeDatabaseEntry entry = new CartridgeDatabaseEntry(sizeInKB, crc32, md5, title, publisher, date,
+					cartridgeType, source);
+			addEntry(entry, hasCRC32);
+			return entry;
+		}
+
+		/**
+		 * Adds an entry for the content of a ROM. The CRC32 and the MD5 digest
+		 * are computed in a single pass over the content.
+		 * 
+		 * @param content
+		 *            The ROM content without header, not <code>null</code>.
+		 *            The size must be a multiple of 1 KB.
+		 * @param title
+		 *            The title, may be empty, not <code>null</code>.
+		 * @param publisher
+		 *            The publisher, may be empty, not <code>null</code>.
+		 * @param date
+		 *            The date, may be empty, not <code>null</code>.
+		 * @param cartridgeType
+		 *            The cartridge type, not <code>null</code>.
+		 * @param source
+		 *            The source, may be empty, not <code>null</code>.
+		 * @return The new entry, not <code>null</code>.
+		 */
+		public CartridgeDatabaseEntry addEntry(byte[] content, String title, String publisher, String date,
+				CartridgeType cartridgeType, String source) {
+			if (content == null) {
+				throw new IllegalArgumentException("Parameter 'content' must not be null.");
+			}
+			if (content.length % KB != 0) {
+				throw new IllegalArgumentException(
+						"Parameter 'content' must have a multiple of 1 KB as size. Specified value has "
+								+ content.length + " bytes.");
+			}
+			MultiDigest.Result digest = MultiDigest.digest(content, false);
+			return addEntry(content.length / KB, true, digest.getCRC32(), digest.getMD5HexString(), title, publisher,
+					date, cartridgeType, source);
+		}
+
+		/**
+		 * Adds an existing entry.
+		 * 
+		 * @param entry
+		 *            The entry, not <code>null</code>.
+		 * @param hasCRC32
+		 *            <code>true</code> if the entry shall be indexed by size
+		 *            and CRC32.
+		 */
+		void addEntry(CartridgeDatabaseEntry entry, boolean hasCRC32) {
+			if (entry == null) {
+				throw new IllegalArgumentException("Parameter 'entry' must not be null.");
+			}
+			int entryIndex = entries.size();
+			entries.add(entry);
+			if (hasCRC32) {
+				entriesBySizeAndCRC32.add(SizeAndCRC32Index.getKey(entry.getSizeInKB(), entry.getCRC32()),
+						entryIndex);
+			}
+			String md5 = entry.getMD5HexString();
+			if (MD5Index.isHexString(md5)) {
+				entriesByMD5.add(MD5Index.getLong(md5, 0), MD5Index.getLong(md5, 16), entryIndex);
+			}
+			if (entry.getCartridgeType() != CartridgeType.UNKNOWN) {
+				knownCartridgeTypesCount++;
+			}
+		}
+
+		/**
+		 * Creates a snapshot with the entries added so far. The builder is
+		 * empty afterwards.
+		 * 
+		 * @return The snapshot, not <code>null</code>.
+		 */
+		public CartridgeDatabaseSnapshot build() {
+			CartridgeDatabaseSnapshot result = new CartridgeDatabaseSnapshot(entries, entriesBySizeAndCRC32,
+					entriesByMD5, knownCartridgeTypesCount);
+			clear();
+			return result;
+		}
+	}
+
+	/**
+	 * The snapshot without entries.
+	 */
+	public static final CartridgeDatabaseSnapshot EMPTY = new Builder().build();
+
+	private final List<CartridgeDatabaseEntry> entries;
+	private final SizeAndCRC32Index entriesBySizeAndCRC32;
+	private final MD5Index entriesByMD5;
+	private final int knownCartridgeTypesCount;
+
+	/**
+	 * Creates a snapshot. The parameters are owned by the snapshot afterwards
+	 * and must not be modified anymore.
+	 * 
+	 * @param entries
+	 *            The entries, not <code>null</code>.
+	 * @param entriesBySizeAndCRC32
+	 *            The index by size and CRC32, not <code>null</code>.
+	 * @param entriesByMD5
+	 *            The index by MD5, not <code>null</code>.
+	 * @param knownCartridgeTypesCount
+	 *            The number of entries with a known cartridge type.
+	 */
+	CartridgeDatabaseSnapshot(List<CartridgeDatabaseEntry> entries, SizeAndCRC32Index entriesBySizeAndCRC32,
+			MD5Index entriesByMD5, int knownCartridgeTypesCount) {
+		if (entries == null) {
+			throw new IllegalArgumentException("Parameter 'entries' must not be null.");
+		}
+		if (entriesBySizeAndCRC32 == null) {
+			throw new IllegalArgumentException("Parameter 'entriesBySizeAndCRC32' must not be null.");
+		}
+		if (entriesByMD5 == null) {
+			throw new IllegalArgumentException("Parameter 'entriesByMD5' must not be null.");
+		}
+		// Prepare the index eagerly, so reading it never modifies it.
+		entriesBySizeAndCRC32.prepare();
+		this.entries = Collections.unmodifiableList(entries);
+		this.entriesBySizeAndCRC32 = entriesBySizeAndCRC32;
+		this.entriesByMD5 = entriesByMD5;
+		this.knownCartridgeTypesCount = knownCartridgeTypesCount;
+	}
+
+	public List<CartridgeDatabaseEntry> getEntries() {
+		return entries;
+	}
+
+	public int getKnownTitelsCount() {
+		return entries.size();
+	}
+
+	public int getKnownCartridgeTypesCount() {
+		return knownCartridgeTypesCount;
+	}
+
+	/**
+	 * Gets the number of entries in the index by size and CRC32.
+	 * 
+	 * @return The number of entries, a non-negative integer.
+	 */
+	int getSizeAndCRC32Count() {
+		return entriesBySizeAndCRC32.size();
+	}
+
+	long getSizeAndCRC32KeyAt(int position) {
+		return entriesBySizeAndCRC32.getKeyAt(position);
+	}
+
+	int getSizeAndCRC32EntryIndexAt(int position) {
+		return entriesBySizeAndCRC32.getEntryIndexAt(position);
+	}
+
+	public List<CartridgeDatabaseEntry> getEntriesBySizeAndCRC32(int sizeInKB, long crc32) {
+		int position = entriesBySizeAndCRC32.getFirstPosition(SizeAndCRC32Index.getKey(sizeInKB, crc32));
+		if (position < 0) {
+			return Collections.emptyList();
+		}
+		int count = entriesBySizeAndCRC32.getCount(position);
+		if (count == 1) {
+			return Collections.singletonList(entries.get(entriesBySizeAndCRC32.getEntryIndexAt(position)));
+		}
+		List<CartridgeDatabaseEntry> result = new ArrayList<CartridgeDatabaseEntry>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(entries.get(entriesBySizeAndCRC32.getEntryIndexAt(position + i)));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Gets the first entry with the given size and CRC32. In contrast to
+	 * {@link #getEntriesBySizeAndCRC32(int, long)} this method does not
+	 * allocate any objects.
+	 * 
+	 * @param sizeInKB
+	 *            The size in KB.
+	 * @param crc32
+	 *            The CRC32.
+	 * @return The first entry or <code>null</code>.
+	 */
+	public CartridgeDatabaseEntry getEntryBySizeAndCRC32(int sizeInKB, long crc32) {
+		int position = entriesBySizeAndCRC32.getFirstPosition(SizeAndCRC32Index.getKey(sizeInKB, crc32));
+		if (position < 0) {
+			return null;
+		}
+		return entries.get(entriesBySizeAndCRC32.getEntryIndexAt(position));
+	}
+
+	/**
+	 * Gets the entries which match the digests of a ROM content. The entries
+	 * are looked up by size and CRC32 first. If there is no such entry, the
+	 * entry is looked up by MD5 digest.
+	 * 
+	 * @param digest
+	 *            The digests of the ROM content without header, not
+	 *            <code>null</code>.
+	 * @return The unmodifiable list of entries, may be empty, not
+	 *         <code>null</code>.
+	 */
+	public List<CartridgeDatabaseEntry> getEntriesByDigest(MultiDigest.Result digest) {
+		if (digest == null) {
+			throw new IllegalArgumentException("Parameter 'digest' must not be null.");
+		}
+		if (digest.getSize() % KB == 0 && digest.getSize() / KB <= Integer.MAX_VALUE) {
+			List<CartridgeDatabaseEntry> result = getEntriesBySizeAndCRC32((int) (digest.getSize() / KB),
+					digest.getCRC32());
+			if (!result.isEmpty()) {
+				return result;
+			}
+		}
+		CartridgeDatabaseEntry entry = getEntryByMD5(digest.getMD5());
+		if (entry != null) {
+			return Collections.singletonList(entry);
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Gets the entries which match a ROM content, see
+	 * {@link #getEntriesByDigest(MultiDigest.Result)}.
+	 * 
+	 * @param content
+	 *            The ROM content without header, not <code>null</code>.
+	 * @return The unmodifiable list of entries, may be empty, not
+	 *         <code>null</code>.
+	 */
+	public List<CartridgeDatabaseEntry> getEntriesByContent(byte[] content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		return getEntriesByDigest(MultiDigest.digest(content, false));
+	}
+
+	/**
+	 * Gets the entry with the given MD5 digest.
+	 * 
+	 * @param md5
+	 *            The MD5 digest as string of 32 hex digits, not
+	 *            <code>null</code>.
+	 * @return The entry or <code>null</code>.
+	 */
+	public CartridgeDatabaseEntry getEntryByMD5(String md5) {
+		if (md5 == null) {
+			throw new IllegalArgumentException("Parameter 'md5' must not be null.");
+		}
+		if (!MD5Index.isHexString(md5)) {
+			return null;
+		}
+		return getEntryByMD5(MD5Index.getLong(md5, 0), MD5Index.getLong(md5, 16));
+	}
+
+	/**
+	 * Gets the entry with the given MD5 digest.
+	 * 
+	 * @param md5
+	 *            The 16 bytes of the MD5 digest, not <code>null</code>.
+	 * @return The entry or <code>null</code>.
+	 */
+	public CartridgeDatabaseEntry getEntryByMD5(byte[] md5) {
+		if (md5 == null) {
+			throw new IllegalArgumentException("Parameter 'md5' must not be null.");
+		}
+		if (md5.length != MD5Index.DIGEST_LENGTH) {
+			throw new IllegalArgumentException("Parameter 'md5' must have a length of " + MD5Index.DIGEST_LENGTH
+					+ " bytes. Specified value has " + md5.length + " bytes.");
+		}
+		return getEntryByMD5(MD5Index.getLong(md5, 0), MD5Index.getLong(md5, 8));
+	}
+
+	private CartridgeDatabaseEntry getEntryByMD5(long high, long low) {
+		int entryIndex = entriesByMD5.getEntryIndex(high, low);
+		if (entryIndex < 0) {
+			return null;
+		}
+		return entries.get(entryIndex);
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari.cartridge;
+
+import java.io.File;
+
+/**
+ * Watches an external CSV file or a folder with CSV files and reloads the
+ * cartridge database in the background when they change, see
+ * {@link CartridgeDatabase#load(File)}. Changes are detected by polling the
+ * modification time and the length of the files, which only requires file
+ * system metadata.
+ * 
+ * @author Peter Dell
+ */
+public final class CartridgeDatabaseWatcher {
+
+	/**
+	 * Callback for reload results. The methods are called from the watcher
+	 * thread, so implementations must be thread safe.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when a new snapshot was published.
+		 * 
+		 * @param snapshot
+		 *            The new snapshot, not <code>null</code>.
+		 */
+		public void databaseReloaded(CartridgeDatabaseSnapshot snapshot);
+
+		/**
+		 * Called when the files could not be loaded. The previous snapshot
+		 * remains active. The same error is reported only once until the
+		 * files are loaded successfully again.
+		 * 
+		 * @param exception
+		 *            The exception, not <code>null</code>.
+		 */
+		public void databaseReloadFailed(Exception exception);
+	}
+
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = 2000;
+
+	private final CartridgeDatabase database;
+	private final File fileOrFolder;
+	private final long pollIntervalMillis;
+	private final Listener listener;
+
+	// Guarded by "this".
+	private Thread thread;
+
+	// Message of the last reported error, guarded by "this".
+	private String lastErrorMessage;
+
+	/**
+	 * Creates a watcher. The watcher must be started with {@link #start()}.
+	 * 
+	 * @param database
+	 *            The database, not <code>null</code>.
+	 * @param fileOrFolder
+	 *            The CSV file or the folder with the CSV files, not
+	 *            <code>null</code>.
+	 * @param pollIntervalMillis
+	 *            The poll interval in milliseconds, a positive integer.
+	 * @param listener
+	 *            The listener, not <code>null</code>.
+	 */
+	public CartridgeDatabaseWatcher(CartridgeDatabase database, File fileOrFolder, long pollIntervalMillis,
+			Listener listener) {
+		if (database == null) {
+			throw new IllegalArgumentException("Parameter 'database' must not be null.");
+		}
+		if (fileOrFolder == null) {
+			throw new IllegalArgumentException("Parameter 'fileOrFolder' must not be null.");
+		}
+		if (pollIntervalMillis < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'pollIntervalMillis' must be positive. Specified value is " + pollIntervalMillis + ".");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter 'listener' must not be null.");
+		}
+		this.database = database;
+		this.fileOrFolder = fileOrFolder;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts the background thread. The first check is performed immediately.
+	 * Calling this method while the watcher is running has no effect.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						check();
+						Thread.sleep(pollIntervalMillis);
+					}
+				} catch (InterruptedException ex) {
+					// Stopped.
+				}
+			}
+		}, "CartridgeDatabaseWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the background thread and waits until it has terminated.
+	 * 
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		Thread stoppedThread;
+		synchronized (this) {
+			stoppedThread = thread;
+			thread = null;
+		}
+		if (stoppedThread != null) {
+			stoppedThread.interrupt();
+			stoppedThread.join();
+		}
+	}
+
+	public synchronized boolean isRunning() {
+		return thread != null;
+	}
+
+	/**
+	 * Reloads the database if the files have changed and notifies the
+	 * listener. This method is called by the background thread, but can also
+	 * be called directly.
+	 * 
+	 * @return <code>true</code> if a new snapshot was published.
+	 */
+	public boolean check() {
+		boolean reloaded;
+		try {
+			reloaded = database.load(fileOrFolder);
+		} catch (Exception ex) {
+			String errorMessage = String.valueOf(ex.getMessage());
+			synchronized (this) {
+				if (errorMessage.equals(lastErrorMessage)) {
+					return false;
+				}
+				lastErrorMessage = errorMessage;
+			}
+			listener.databaseReloadFailed(ex);
+			return false;
+		}
+		synchronized (this) {
+			lastErrorMessage = null;
+		}
+		if (reloaded) {
+			listener.databaseReloaded(database.getSnapshot());
+		}
+		return reloaded;
+	}
+}
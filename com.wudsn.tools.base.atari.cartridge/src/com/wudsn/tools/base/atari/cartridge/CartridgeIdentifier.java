@@ -0,0 +1,787 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari.cartridge;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.KB;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.wudsn.tools.base.atari.CartridgeFileUtility;
+import com.wudsn.tools.base.atari.CartridgeType;
+import com.wudsn.tools.base.common.HexUtility;
+import com.wudsn.tools.base.common.MultiDigest;
+
+/**
+ * Bulk identification of cartridge ROM files in a folder tree based on the
+ * {@link CartridgeDatabase}. The identification runs as pipeline with the
+ * following stages, which are connected by bounded queues:
+ * <ul>
+ * <li>The reader stage walks the folder tree in the calling thread and reads
+ * the files.</li>
+ * <li>The hashing stage computes CRC32 and MD5 of the ROM content in a single
+ * pass with a fixed number of worker threads. The header of ".CAR" files is
+ * detected and excluded from the digests.</li>
+ * <li>The lookup stage looks up the entries in a single snapshot of the
+ * database and reports the results to a {@link Listener}.</li>
+ * </ul>
+ * The number of files in flight and the sum of their sizes are bounded, so
+ * the reader blocks while the later stages are busy. If the listener or a
+ * stage fails, the remaining files are passed through the pipeline without
+ * being processed or reported and the failure is thrown by the calling
+ * thread.
+ * 
+ * @author Peter Dell
+ */
+public final class CartridgeIdentifier {
+
+	/**
+	 * Callback for identification results. The methods are called from the
+	 * single lookup thread in the order in which the files were hashed.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when a file has been identified.
+		 * 
+		 * @param result
+		 *            The result, not <code>null</code>.
+		 */
+		public void fileIdentified(Result result);
+	}
+
+	/**
+	 * Identification result for a single file.
+	 */
+	public static final class Result {
+		File file;
+		long fileSize;
+		int cartridgeTypeNumericId;
+		int contentSize;
+		MultiDigest.Result digest;
+		List<CartridgeDatabaseEntry> entries;
+		String errorMessage;
+
+		// Content during the pipeline, released by the lookup stage.
+		byte[] content;
+		int sizeKB;
+
+		Result(File file) {
+			this.file = file;
+			entries = Collections.emptyList();
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getFileSize() {
+			return fileSize;
+		}
+
+		/**
+		 * Gets the numeric id of the cartridge type in the header of a ".CAR"
+		 * file.
+		 * 
+		 * @return The numeric id or 0 if the file has no header.
+		 */
+		public int getCartridgeTypeNumericId() {
+			return cartridgeTypeNumericId;
+		}
+
+		/**
+		 * Gets the size of the ROM content without header.
+		 * 
+		 * @return The size in bytes, a non-negative integer.
+		 */
+		public int getContentSize() {
+			return contentSize;
+		}
+
+		public long getCRC32() {
+			return digest == null ? 0 : digest.getCRC32();
+		}
+
+		/**
+		 * Gets the MD5 digest of the ROM content.
+		 * 
+		 * @return The MD5 digest as upper case hex string, empty if the file
+		 *         could not be read, not <code>null</code>.
+		 */
+		public String getMD5HexString() {
+			return digest == null ? "" : digest.getMD5HexString();
+		}
+
+		/**
+		 * Gets the matching database entries.
+		 * 
+		 * @return The unmodifiable list of entries, empty if the file is
+		 *         unknown, not <code>null</code>.
+		 */
+		public List<CartridgeDatabaseEntry> getEntries() {
+			return entries;
+		}
+
+		/**
+		 * Gets the error message if the file could not be read.
+		 * 
+		 * @return The error message or <code>null</code>.
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return "file=" + file + " fileSize=" + fileSize + " cartridgeTypeNumericId=" + cartridgeTypeNumericId
+					+ " crc32=" + Long.toHexString(getCRC32()) + " md5=" + getMD5HexString() + " entries=" + entries
+					+ (errorMessage != null ? " error=" + errorMessage : "");
+		}
+	}
+
+	/**
+	 * Throughput counters of an identification run. The counters are updated
+	 * while the run is in progress, so they can be used to display the
+	 * progress.
+	 */
+	public static final class Statistics {
+		private final long startTimeMillis;
+		private volatile long endTimeMillis;
+		final AtomicLong filesRead;
+		final AtomicLong bytesRead;
+		final AtomicLong filesHashed;
+		final AtomicLong filesIdentified;
+		final AtomicLong filesFailed;
+
+		Statistics() {
+			startTimeMillis = System.currentTimeMillis();
+			filesRead = new AtomicLong();
+			bytesRead = new AtomicLong();
+			filesHashed = new AtomicLong();
+			filesIdentified = new AtomicLong();
+			filesFailed = new AtomicLong();
+		}
+
+		void finish() {
+			endTimeMillis = System.currentTimeMillis();
+		}
+
+		public long getFilesRead() {
+			return filesRead.get();
+		}
+
+		public long getBytesRead() {
+			return bytesRead.get();
+		}
+
+		public long getFilesHashed() {
+			return filesHashed.get();
+		}
+
+		/**
+		 * Gets the number of files with at least one matching entry.
+		 * 
+		 * @return The number of files, a non-negative integer.
+		 */
+		public long getFilesIdentified() {
+			return filesIdentified.get();
+		}
+
+		/**
+		 * Gets the number of files which could not be read.
+		 * 
+		 * @return The number of files, a non-negative integer.
+		 */
+		public long getFilesFailed() {
+			return filesFailed.get();
+		}
+
+		/**
+		 * Gets the elapsed time of the run so far or in total if it has
+		 * finished.
+		 * 
+		 * @return The elapsed time in milliseconds, a non-negative integer.
+		 */
+		public long getElapsedTimeMillis() {
+			long end = endTimeMillis;
+			return (end == 0 ? System.currentTimeMillis() : end) - startTimeMillis;
+		}
+
+		/**
+		 * Gets the average number of bytes read per second.
+		 * 
+		 * @return The number of bytes per second, a non-negative integer.
+		 */
+		public long getBytesPerSecond() {
+			return getBytesRead() * 1000 / Math.max(1, getElapsedTimeMillis());
+		}
+
+		@Override
+		public String toString() {
+			return "filesRead=" + getFilesRead() + " bytesRead=" + getBytesRead() + " filesHashed="
+					+ getFilesHashed() + " filesIdentified=" + getFilesIdentified() + " filesFailed="
+					+ getFilesFailed() + " elapsedTimeMillis=" + getElapsedTimeMillis() + " bytesPerSecond="
+					+ getBytesPerSecond();
+		}
+	}
+
+	/**
+	 * Listener which writes the results as CSV with one line per matching
+	 * entry or a single line if no entry matches.
+	 */
+	public static final class CSVWriter implements Listener {
+		private static final char SEPARATOR_CHAR = ';';
+		private static final char QUOTE_CHAR = '\"';
+		private static final String NEW_LINE_CHARS = "\r\n";
+
+		private final Writer writer;
+		private IOException exception;
+
+		/**
+		 * Creates a CSV writer and writes the header line.
+		 * 
+		 * @param writer
+		 *            The writer, not <code>null</code>. The writer is not
+		 *            closed.
+		 * @throws IOException
+		 *             If the header line cannot be written.
+		 */
+		public CSVWriter(Writer writer) throws IOException {
+			if (writer == null) {
+				throw new IllegalArgumentException("Parameter 'writer' must not be null.");
+			}
+			this.writer = writer;
+			writer.write("sep=" + SEPARATOR_CHAR + NEW_LINE_CHARS);
+			writer.write("file;fileSize;cartridgeType;crc32;md5;title;publisher;date;databaseCartridgeType;error"
+					+ NEW_LINE_CHARS);
+		}
+
+		@Override
+		public void fileIdentified(Result result) {
+			if (exception != null) {
+				return;
+			}
+			try {
+				if (result.getEntries().isEmpty()) {
+					writeLine(result, null);
+				} else {
+					for (CartridgeDatabaseEntry entry : result.getEntries()) {
+						writeLine(result, entry);
+					}
+				}
+			} catch (IOException ex) {
+				exception = ex;
+			}
+		}
+
+		private void writeLine(Result result, CartridgeDatabaseEntry entry) throws IOException {
+			StringBuilder builder = new StringBuilder();
+			appendQuoted(builder, result.getFile().getPath()).append(SEPARATOR_CHAR);
+			builder.append(result.getFileSize()).append(SEPARATOR_CHAR);
+			builder.append(getCartridgeTypeId(result.getCartridgeTypeNumericId())).append(SEPARATOR_CHAR);
+			builder.append(getCRC32HexString(result.getCRC32())).append(SEPARATOR_CHAR);
+			builder.append(result.getMD5HexString()).append(SEPARATOR_CHAR);
+			if (entry != null) {
+				appendQuoted(builder, entry.getTitle()).append(SEPARATOR_CHAR);
+				appendQuoted(builder, entry.getPublisher()).append(SEPARATOR_CHAR);
+				appendQuoted(builder, entry.getDate()).append(SEPARATOR_CHAR);
+				builder.append(entry.getCartridgeType().getId()).append(SEPARATOR_CHAR);
+			} else {
+				builder.append(SEPARATOR_CHAR).append(SEPARATOR_CHAR).append(SEPARATOR_CHAR).append(SEPARATOR_CHAR);
+			}
+			if (result.getErrorMessage() != null) {
+				appendQuoted(builder, result.getErrorMessage());
+			}
+			builder.append(NEW_LINE_CHARS);
+			writer.write(builder.toString());
+		}
+
+		private static StringBuilder appendQuoted(StringBuilder builder, String value) {
+			builder.append(QUOTE_CHAR);
+			builder.append(value.replace("\"", "\"\""));
+			builder.append(QUOTE_CHAR);
+			return builder;
+		}
+
+		/**
+		 * Gets the first exception which occurred while writing.
+		 * 
+		 * @return The exception or <code>null</code>.
+		 */
+		public IOException getException() {
+			return exception;
+		}
+	}
+
+	/**
+	 * Listener which writes the results as JSON Lines, i.e. one JSON object
+	 * per file and line.
+	 */
+	public static final class JSONWriter implements Listener {
+		private final Writer writer;
+		private IOException exception;
+
+		/**
+		 * Creates a JSON writer.
+		 * 
+		 * @param writer
+		 *            The writer, not <code>null</code>. The writer is not
+		 *            closed.
+		 */
+		public JSONWriter(Writer writer) {
+			if (writer == null) {
+				throw new IllegalArgumentException("Parameter 'writer' must not be null.");
+			}
+			this.writer = writer;
+		}
+
+		@Override
+		public void fileIdentified(Result result) {
+			if (exception != null) {
+				return;
+			}
+			StringBuilder builder = new StringBuilder();
+			builder.append("{\"file\":");
+			appendString(builder, result.getFile().getPath());
+			builder.append(",\"fileSize\":").append(result.getFileSize());
+			builder.append(",\"cartridgeType\":");
+			appendString(builder, getCartridgeTypeId(result.getCartridgeTypeNumericId()));
+			builder.append(",\"crc32\":");
+			appendString(builder, getCRC32HexString(result.getCRC32()));
+			builder.append(",\"md5\":");
+			appendString(builder, result.getMD5HexString());
+			builder.append(",\"entries\":[");
+			for (int i = 0; i < result.getEntries().size(); i++) {
+				CartridgeDatabaseEntry entry = result.getEntries().get(i);
+				if (i > 0) {
+					builder.append(',');
+				}
+				builder.append("{\"title\":");
+				appendString(builder, entry.getTitle());
+				builder.append(",\"publisher\":");
+				appendString(builder, entry.getPublisher());
+				builder.append(",\"date\":");
+				appendString(builder, entry.getDate());
+				builder.append(",\"cartridgeType\":");
+				appendString(builder, entry.getCartridgeType().getId());
+				builder.append('}');
+			}
+			builder.append(']');
+			if (result.getErrorMessage() != null) {
+				builder.append(",\"error\":");
+				appendString(builder, result.getErrorMessage());
+			}
+			builder.append("}\n");
+			try {
+				writer.write(builder.toString());
+			} catch (IOException ex) {
+				exception = ex;
+			}
+		}
+
+		private static void appendString(StringBuilder builder, String value) {
+			builder.append('\"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '\"':
+					builder.append("\\\"");
+					break;
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						builder.append(String.format("\\u%04x", Integer.valueOf(c)));
+					} else {
+						builder.append(c);
+					}
+				}
+			}
+			builder.append('\"');
+		}
+
+		/**
+		 * Gets the first exception which occurred while writing.
+		 * 
+		 * @return The exception or <code>null</code>.
+		 */
+		public IOException getException() {
+			return exception;
+		}
+	}
+
+	// Default limit for the sum of the file sizes in flight.
+	public static final long DEFAULT_MAX_IN_FLIGHT_SIZE = 256L * 1024 * 1024;
+
+	// Files larger than this are not read.
+	public static final int MAX_FILE_SIZE = 64 * 1024 * 1024;
+
+	private static final String[] FILE_EXTENSIONS = { ".car", ".rom", ".bin" };
+
+	// Marks the end of the input of a stage.
+	private static final Result END_OF_QUEUE = new Result(new File(""));
+
+	private final CartridgeDatabase database;
+	private final int threadCount;
+	private final int maxInFlightKB;
+	private volatile Statistics statistics;
+
+	/**
+	 * Creates an identifier.
+	 * 
+	 * @param database
+	 *            The database, not <code>null</code>.
+	 * @param threadCount
+	 *            The number of hashing threads, a positive integer.
+	 * @param maxInFlightSize
+	 *            The maximum sum of the sizes in bytes of the files in the
+	 *            pipeline, a positive integer.
+	 */
+	public CartridgeIdentifier(CartridgeDatabase database, int threadCount, long maxInFlightSize) {
+		if (database == null) {
+			throw new IllegalArgumentException("Parameter 'database' must not be null.");
+		}
+		if (threadCount < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'threadCount' must be positive. Specified value is " + threadCount + ".");
+		}
+		if (maxInFlightSize < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'maxInFlightSize' must be positive. Specified value is " + maxInFlightSize + ".");
+		}
+		this.database = database;
+		this.threadCount = threadCount;
+		this.maxInFlightKB = (int) Math.min(Integer.MAX_VALUE, (maxInFlightSize + KB - 1) / KB);
+	}
+
+	/**
+	 * Creates an identifier with one hashing thread per available processor
+	 * and the {@link #DEFAULT_MAX_IN_FLIGHT_SIZE}.
+	 * 
+	 * @param database
+	 *            The database, not <code>null</code>.
+	 */
+	public CartridgeIdentifier(CartridgeDatabase database) {
+		this(database, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT_SIZE);
+	}
+
+	/**
+	 * Gets the statistics of the current or last run.
+	 * 
+	 * @return The statistics or <code>null</code> if no run has been started.
+	 */
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Identifies all ROM files in a folder and its sub-folders. The method
+	 * returns after all files have been identified and reported.
+	 * 
+	 * @param folder
+	 *            The root folder, not <code>null</code>.
+	 * @param listener
+	 *            The listener which receives the results, not
+	 *            <code>null</code>.
+	 * @return The statistics of the run, not <code>null</code>.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 * @throws RuntimeException
+	 *             If the listener or a stage has thrown a runtime exception.
+	 * @throws Error
+	 *             If the listener or a stage has thrown an error.
+	 */
+	public Statistics identify(File folder, final Listener listener) throws InterruptedException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Parameter 'folder' must not be null.");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter 'listener' must not be null.");
+		}
+
+		final Statistics currentStatistics = new Statistics();
+		statistics = currentStatistics;
+		final BlockingQueue<Result> hashQueue = new ArrayBlockingQueue<Result>(threadCount * 2);
+		final BlockingQueue<Result> lookupQueue = new ArrayBlockingQueue<Result>(threadCount * 2);
+		final Semaphore sizePermits = new Semaphore(maxInFlightKB);
+		final CartridgeDatabaseSnapshot snapshot = database.getSnapshot();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < threadCount; i++) {
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					runHashStage(hashQueue, lookupQueue, failure, currentStatistics);
+				}
+			}, "CartridgeIdentifier-Hash-" + (i + 1)));
+		}
+		threads.add(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				runLookupStage(lookupQueue, sizePermits, snapshot, listener, failure, currentStatistics);
+			}
+		}, "CartridgeIdentifier-Lookup"));
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		boolean completed = false;
+		try {
+			runReadStage(folder, hashQueue, sizePermits, failure, currentStatistics);
+			for (int i = 0; i < threadCount; i++) {
+				hashQueue.put(END_OF_QUEUE);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			completed = true;
+			Throwable throwable = failure.get();
+			if (throwable instanceof RuntimeException) {
+				throw (RuntimeException) throwable;
+			}
+			if (throwable instanceof Error) {
+				throw (Error) throwable;
+			}
+			if (throwable != null) {
+				throw new RuntimeException(throwable);
+			}
+		} finally {
+			if (!completed) {
+				for (Thread thread : threads) {
+					thread.interrupt();
+				}
+			}
+			currentStatistics.finish();
+		}
+		return currentStatistics;
+	}
+
+	/**
+	 * Runs the read stage. The stage stops reading files as soon as another
+	 * stage has failed.
+	 */
+	private void runReadStage(File folder, BlockingQueue<Result> hashQueue, Semaphore sizePermits,
+			AtomicReference<Throwable> failure, Statistics currentStatistics) throws InterruptedException {
+		List<File> folders = new ArrayList<File>();
+		folders.add(folder);
+		while (!folders.isEmpty() && failure.get() == null) {
+			File[] files = folders.remove(folders.size() - 1).listFiles(new FileFilter() {
+
+				@Override
+				public boolean accept(File file) {
+					if (file.isDirectory()) {
+						return true;
+					}
+					String name = file.getName().toLowerCase();
+					for (String fileExtension : FILE_EXTENSIONS) {
+						if (name.endsWith(fileExtension)) {
+							return true;
+						}
+					}
+					return false;
+				}
+			});
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				if (failure.get() != null) {
+					return;
+				}
+				if (file.isDirectory()) {
+					folders.add(file);
+					continue;
+				}
+				Result result = new Result(file);
+				result.sizeKB = (int) Math.min(maxInFlightKB, (Math.min(file.length(), MAX_FILE_SIZE) + KB - 1) / KB);
+				sizePermits.acquire(result.sizeKB);
+				read(result);
+				currentStatistics.filesRead.incrementAndGet();
+				currentStatistics.bytesRead.addAndGet(result.fileSize);
+				hashQueue.put(result);
+			}
+		}
+	}
+
+	private static void read(Result result) {
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(result.file, "r");
+			long length = randomAccessFile.length();
+			if (length > MAX_FILE_SIZE) {
+				result.errorMessage = "File is larger than " + MAX_FILE_SIZE + " bytes.";
+				return;
+			}
+			byte[] content = new byte[(int) length];
+			randomAccessFile.readFully(content);
+			result.content = content;
+			result.fileSize = length;
+		} catch (IOException ex) {
+			result.errorMessage = ex.getMessage();
+		} finally {
+			if (randomAccessFile != null) {
+				try {
+					randomAccessFile.close();
+				} catch (IOException ignore) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the hashing stage. A runtime exception while hashing a file is
+	 * reported as error of the file. Any other failure is recorded and the
+	 * remaining results are passed on without hashing. The end of the queue is
+	 * always passed on, unless the stage is cancelled.
+	 */
+	private static void runHashStage(BlockingQueue<Result> hashQueue, BlockingQueue<Result> lookupQueue,
+			AtomicReference<Throwable> failure, Statistics currentStatistics) {
+		MultiDigest multiDigest = new MultiDigest(false);
+		boolean cancelled = false;
+		try {
+			Result result;
+			while ((result = hashQueue.take()) != END_OF_QUEUE) {
+				if (result.content != null && failure.get() == null) {
+					try {
+						hash(result, multiDigest);
+						currentStatistics.filesHashed.incrementAndGet();
+					} catch (RuntimeException ex) {
+						result.digest = null;
+						result.errorMessage = ex.toString();
+					} catch (Throwable th) {
+						result.digest = null;
+						result.errorMessage = th.toString();
+						failure.compareAndSet(null, th);
+					}
+				}
+				lookupQueue.put(result);
+			}
+		} catch (InterruptedException ex) {
+			cancelled = true;
+		} catch (Throwable th) {
+			failure.compareAndSet(null, th);
+		} finally {
+			if (!cancelled) {
+				try {
+					lookupQueue.put(END_OF_QUEUE);
+				} catch (InterruptedException ex) {
+					// Cancelled.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes CRC32 and MD5 of the ROM content in a single pass.
+	 */
+	private static void hash(Result result, MultiDigest multiDigest) {
+		byte[] content = result.content;
+		int offset = 0;
+		result.cartridgeTypeNumericId = CartridgeFileUtility.getCartridgeTypeNumericId(content);
+		if (result.cartridgeTypeNumericId != 0) {
+			offset = CartridgeFileUtility.CART_HEADER_SIZE;
+		}
+		result.contentSize = content.length - offset;
+		multiDigest.reset();
+		multiDigest.update(content, offset, content.length - offset);
+		result.digest = multiDigest.digest();
+	}
+
+	/**
+	 * Runs the lookup stage. If the listener or the lookup fails, the failure
+	 * is recorded and the remaining results are still consumed but not
+	 * reported anymore, so the other stages can complete and the failure can
+	 * be thrown by the calling thread. The size of every result is always
+	 * released.
+	 */
+	private void runLookupStage(BlockingQueue<Result> lookupQueue, Semaphore sizePermits,
+			CartridgeDatabaseSnapshot snapshot, Listener listener, AtomicReference<Throwable> failure,
+			Statistics currentStatistics) {
+		int activeHashThreads = threadCount;
+		try {
+			while (activeHashThreads > 0) {
+				Result result = lookupQueue.take();
+				if (result == END_OF_QUEUE) {
+					activeHashThreads--;
+					continue;
+				}
+				try {
+					result.content = null;
+					if (failure.get() == null) {
+						if (result.digest != null) {
+							result.entries = snapshot.getEntriesByDigest(result.digest);
+							if (!result.entries.isEmpty()) {
+								currentStatistics.filesIdentified.incrementAndGet();
+							}
+						} else {
+							currentStatistics.filesFailed.incrementAndGet();
+						}
+						listener.fileIdentified(result);
+					}
+				} catch (Throwable th) {
+					failure.compareAndSet(null, th);
+				} finally {
+					sizePermits.release(result.sizeKB);
+				}
+			}
+		} catch (InterruptedException ex) {
+			// Cancelled.
+		}
+	}
+
+	static String getCartridgeTypeId(int cartridgeTypeNumericId) {
+		if (cartridgeTypeNumericId == 0) {
+			return "";
+		}
+		CartridgeType cartridgeType = CartridgeType.getInstance(cartridgeTypeNumericId);
+		return cartridgeType == null ? Integer.toString(cartridgeTypeNumericId) : cartridgeType.getId();
+	}
+
+	static String getCRC32HexString(long crc32) {
+		return "0x" + HexUtility.getLongValueHexString(crc32, 8);
+	}
+}
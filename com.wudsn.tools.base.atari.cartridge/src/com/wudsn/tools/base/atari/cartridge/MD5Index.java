@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari.cartridge;
+
+/**
+ * Index of cartridge database entries by MD5 digest. The 16 bytes of a digest
+ * are stored as two long values in an open addressing hash table with linear
+ * probing, so lookups require neither hex strings nor any other allocation. If
+ * several entries have the same digest, the last one added is kept.
+ * 
+ * @author Peter Dell
+ */
+final class MD5Index {
+
+	static final int DIGEST_LENGTH = 16;
+	static final int HEX_STRING_LENGTH = 32;
+
+	private static final int INITIAL_BITS = 10;
+
+	// Multiplier for Fibonacci hashing, 2^64 divided by the golden ratio.
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private long[] highs;
+	private long[] lows;
+
+	// Entry index + 1 per slot, 0 if the slot is free.
+	private int[] entryIndexes;
+	private int bits;
+	private int size;
+
+	MD5Index() {
+		clear();
+	}
+
+	/**
+	 * Creates a copy of an index.
+	 * 
+	 * @param index
+	 *            The index, not <code>null</code>.
+	 */
+	MD5Index(MD5Index index) {
+		if (index == null) {
+			throw new IllegalArgumentException("Parameter 'index' must not be null.");
+		}
+		highs = index.highs.clone();
+		lows = index.lows.clone();
+		entryIndexes = index.entryIndexes.clone();
+		bits = index.bits;
+		size = index.size;
+	}
+
+	/**
+	 * Determines if a string is a complete MD5 digest with 32 hex digits.
+	 * 
+	 * @param hexString
+	 *            The string, not <code>null</code>.
+	 * @return <code>true</code> if the string can be used with
+	 *         {@link #getLong(String, int)}.
+	 */
+	static boolean isHexString(String hexString) {
+		if (hexString.length() != HEX_STRING_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < HEX_STRING_LENGTH; i++) {
+			if (Character.digit(hexString.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets 8 bytes of a digest from its hex string representation.
+	 * 
+	 * @param hexString
+	 *            The hex string, see {@link #isHexString(String)}.
+	 * @param offset
+	 *            The offset of the first hex digit, 0 or 16.
+	 * @return The 8 bytes of the digest as long value.
+	 */
+	static long getLong(String hexString, int offset) {
+		long result = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			result = result << 4 | Character.digit(hexString.charAt(i), 16);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets 8 bytes of a digest.
+	 * 
+	 * @param digest
+	 *            The digest, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the first byte, 0 or 8.
+	 * @return The 8 bytes of the digest as big endian long value.
+	 */
+	static long getLong(byte[] digest, int offset) {
+		long result = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			result = result << 8 | (digest[i] & 0xff);
+		}
+		return result;
+	}
+
+	void clear() {
+		bits = INITIAL_BITS;
+		highs = new long[1 << bits];
+		lows = new long[1 << bits];
+		entryIndexes = new int[1 << bits];
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a digest. If the digest is already contained, its entry index is
+	 * replaced.
+	 * 
+	 * @param high
+	 *            The first 8 bytes of the digest.
+	 * @param low
+	 *            The last 8 bytes of the digest.
+	 * @param entryIndex
+	 *            The index of the entry, a non-negative integer.
+	 * @return <code>true</code> if the digest was added, <code>false</code> if
+	 *         it was already contained and its entry index was replaced.
+	 */
+	boolean add(long high, long low, int entryIndex) {
+		if (entryIndex < 0) {
+			throw new IllegalArgumentException("Parameter 'entryIndex' must not be negative. Specified value is "
+					+ entryIndex + ".");
+		}
+		if ((size + 1) * 2 > entryIndexes.length) {
+			resize();
+		}
+		int slot = findSlot(high, low);
+		if (entryIndexes[slot] != 0) {
+			entryIndexes[slot] = entryIndex + 1;
+			return false;
+		}
+		highs[slot] = high;
+		lows[slot] = low;
+		entryIndexes[slot] = entryIndex + 1;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Gets the index of the entry with a digest.
+	 * 
+	 * @param high
+	 *            The first 8 bytes of the digest.
+	 * @param low
+	 *            The last 8 bytes of the digest.
+	 * @return The index of the entry or -1 if the digest is not contained.
+	 */
+	int getEntryIndex(long high, long low) {
+		return entryIndexes[findSlot(high, low)] - 1;
+	}
+
+	private int findSlot(long high, long low) {
+		int mask = entryIndexes.length - 1;
+		int slot = (int) (((high ^ low) * HASH_MULTIPLIER) >>> (64 - bits));
+		while (entryIndexes[slot] != 0 && (highs[slot] != high || lows[slot] != low)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		int[] oldEntryIndexes = entryIndexes;
+		bits++;
+		highs = new long[1 << bits];
+		lows = new long[1 << bits];
+		entryIndexes = new int[1 << bits];
+		for (int i = 0; i < oldEntryIndexes.length; i++) {
+			if (oldEntryIndexes[i] != 0) {
+				int slot = findSlot(oldHighs[i], oldLows[i]);
+				highs[slot] = oldHighs[i];
+				lows[slot] = oldLows[i];
+				entryIndexes[slot] = oldEntryIndexes[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari.cartridge;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Index of cartridge database entries by size and CRC32. The size in KB and
+ * the CRC32 are packed into a single long key. The keys are kept in a sorted
+ * primitive array together with the index of the entry in the database, so
+ * entries with the same key are adjacent and the arrays can be bulk-read from
+ * the binary database file. Lookups use an open addressing hash table with
+ * linear probing, which maps each distinct key to its first position in the
+ * sorted arrays. Lookups do not allocate any objects.
+ * 
+ * @author Peter Dell
+ */
+final class SizeAndCRC32Index {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// Multiplier for Fibonacci hashing, 2^64 divided by the golden ratio.
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private long[] keys;
+	private int[] entryIndexes;
+	private int size;
+	private boolean sorted;
+
+	// Hash table with the first position + 1 per distinct key, 0 if the slot is
+	// free. It is null if it has to be rebuilt.
+	private int[] slots;
+	private int slotBits;
+
+	/**
+	 * Creates an empty index.
+	 */
+	SizeAndCRC32Index() {
+		clear();
+	}
+
+	/**
+	 * Creates an index from arrays which are already sorted by key and entry
+	 * index. The arrays are not copied.
+	 * 
+	 * @param keys
+	 *            The keys, not <code>null</code>.
+	 * @param entryIndexes
+	 *            The entry indexes, not <code>null</code>.
+	 */
+	SizeAndCRC32Index(long[] keys, int[] entryIndexes) {
+		if (keys == null) {
+			throw new IllegalArgumentException("Parameter 'keys' must not be null.");
+		}
+		if (entryIndexes == null) {
+			throw new IllegalArgumentException("Parameter 'entryIndexes' must not be null.");
+		}
+		if (keys.length != entryIndexes.length) {
+			throw new IllegalArgumentException("Parameter 'keys' has length " + keys.length
+					+ " but parameter 'entryIndexes' has length " + entryIndexes.length + ".");
+		}
+		this.keys = keys;
+		this.entryIndexes = entryIndexes;
+		this.size = keys.length;
+		this.sorted = true;
+	}
+
+	/**
+	 * Creates a copy of an index.
+	 * 
+	 * @param index
+	 *            The index, not <code>null</code>.
+	 */
+	SizeAndCRC32Index(SizeAndCRC32Index index) {
+		if (index == null) {
+			throw new IllegalArgumentException("Parameter 'index' must not be null.");
+		}
+		int capacity = Math.max(INITIAL_CAPACITY, index.size);
+		keys = Arrays.copyOf(index.keys, capacity);
+		entryIndexes = Arrays.copyOf(index.entryIndexes, capacity);
+		size = index.size;
+		sorted = index.sorted;
+	}
+
+	/**
+	 * Packs the size and the CRC32 into a key.
+	 * 
+	 * @param sizeInKB
+	 *            The size in KB, a non-negative integer.
+	 * @param crc32
+	 *            The CRC32 value, only the lower 32 bits are used.
+	 * @return The key.
+	 */
+	static long getKey(int sizeInKB, long crc32) {
+		return ((long) sizeInKB << 32) | (crc32 & 0xffffffffL);
+	}
+
+	/**
+	 * Computes a well distributed hash code for a key.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The hash code.
+	 */
+	static int getHashCode(long key) {
+		long hash = key * HASH_MULTIPLIER;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	void clear() {
+		keys = new long[INITIAL_CAPACITY];
+		entryIndexes = new int[INITIAL_CAPACITY];
+		size = 0;
+		sorted = true;
+		slots = null;
+	}
+
+	void add(long key, int entryIndex) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			entryIndexes = Arrays.copyOf(entryIndexes, size * 2);
+		}
+		if (size > 0 && keys[size - 1] > key) {
+			sorted = false;
+		}
+		keys[size] = key;
+		entryIndexes[size] = entryIndex;
+		size++;
+		slots = null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getKeyAt(int position) {
+		sort();
+		return keys[position];
+	}
+
+	int getEntryIndexAt(int position) {
+		sort();
+		return entryIndexes[position];
+	}
+
+	/**
+	 * Finds the first position of a key.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @return The first position of the key or -1 if the key is not contained.
+	 */
+	int getFirstPosition(long key) {
+		if (slots == null) {
+			buildSlots();
+		}
+		int mask = slots.length - 1;
+		int slot = (int) ((key * HASH_MULTIPLIER) >>> (64 - slotBits));
+		int position;
+		while ((position = slots[slot]) != 0) {
+			if (keys[position - 1] == key) {
+				return position - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the number of entries with the key at a position.
+	 * 
+	 * @param position
+	 *            The first position of the key, see {@link #getFirstPosition(long)}.
+	 * @return The number of entries, a positive integer.
+	 */
+	int getCount(int position) {
+		long key = keys[position];
+		int end = position + 1;
+		while (end < size && keys[end] == key) {
+			end++;
+		}
+		return end - position;
+	}
+
+	/**
+	 * Sorts the arrays and builds the hash table. Afterwards the index can be
+	 * read concurrently, as long as no more entries are added.
+	 */
+	void prepare() {
+		if (slots == null) {
+			buildSlots();
+		}
+	}
+
+	/**
+	 * Builds the hash table with a load factor of at most 0.5.
+	 */
+	private void buildSlots() {
+		sort();
+		int bits = 1;
+		while ((1 << bits) < size * 2) {
+			bits++;
+		}
+		int[] newSlots = new int[1 << bits];
+		int mask = newSlots.length - 1;
+		for (int position = 0; position < size; position++) {
+			long key = keys[position];
+			if (position > 0 && keys[position - 1] == key) {
+				continue;
+			}
+			int slot = (int) ((key * HASH_MULTIPLIER) >>> (64 - bits));
+			while (newSlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			newSlots[slot] = position + 1;
+		}
+		slotBits = bits;
+		slots = newSlots;
+	}
+
+	/**
+	 * Sorts the arrays by key and entry index if entries were added out of order.
+	 */
+	private void sort() {
+		if (sorted) {
+			return;
+		}
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = Integer.valueOf(i);
+		}
+		final long[] unsortedKeys = keys;
+		final int[] unsortedEntryIndexes = entryIndexes;
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				long key1 = unsortedKeys[o1.intValue()];
+				long key2 = unsortedKeys[o2.intValue()];
+				if (key1 != key2) {
+					return key1 < key2 ? -1 : 1;
+				}
+				return unsortedEntryIndexes[o1.intValue()] - unsortedEntryIndexes[o2.intValue()];
+			}
+		});
+		long[] sortedKeys = new long[keys.length];
+		int[] sortedEntryIndexes = new int[keys.length];
+		for (int i = 0; i < size; i++) {
+			sortedKeys[i] = unsortedKeys[order[i].intValue()];
+			sortedEntryIndexes[i] = unsortedEntryIndexes[order[i].intValue()];
+		}
+		keys = sortedKeys;
+		entryIndexes = sortedEntryIndexes;
+		sorted = true;
+	}
+}
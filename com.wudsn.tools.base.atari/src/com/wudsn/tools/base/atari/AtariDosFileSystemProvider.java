@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * File system provider for Atari DOS 1.0, 2.0S, 2.5 and 3.0. The directory is
+ * supported for DOS 2.0S and DOS 2.5.
+ * 
+ * @author Peter Dell
+ */
+public final class AtariDosFileSystemProvider implements AtrFileSystem.Provider {
+
+	// Boot sector signature of DOS 3.0.
+	private static final byte[] DOS_30_BOOT_SIGNATURE = { 0x01, 0x09, 0x00, 0x32, 0x06, 0x32 };
+
+	// From https://guryus.tripod.com/hints.htm, 1995 = 0x7cb, which is loaded
+	// from the boot sectors starting at 0x700.
+	private static final int PEEK_1995_SECTOR = 1 + (0x7cb - 0x700) / AtrFile.SECTOR_SIZE_SD;
+	private static final int PEEK_1995_OFFSET = (0x7cb - 0x700) % AtrFile.SECTOR_SIZE_SD;
+
+	/**
+	 * Creates a provider. Called by the {@link java.util.ServiceLoader}.
+	 */
+	public AtariDosFileSystemProvider() {
+
+	}
+
+	@Override
+	public DosVersion detectDosVersion(AtrFile atrFile) throws AtrException {
+		if (atrFile == null) {
+			throw new IllegalArgumentException("Parameter 'atrFile' must not be null.");
+		}
+
+		// From https://atari.kensclassics.org/dos.htm
+		int vtoc0 = atrFile.getSectorBuffer(AtrVtoc.VTOC_SECTOR).get(0) & MASK_FF;
+		switch (vtoc0) {
+		case 1:
+			return DosVersion.ATARI_DOS_10;
+		case 2:
+			int peek1995 = atrFile.getSectorBuffer(PEEK_1995_SECTOR).get(PEEK_1995_OFFSET) & MASK_FF;
+			switch (peek1995) {
+			case 170:
+				return DosVersion.ATARI_DOS_20S;
+			case 100:
+				return DosVersion.ATARI_DOS_25;
+			default:
+				if (atrFile.getSectorCount() == 720) {
+					return DosVersion.ATARI_DOS_20S;
+				} else if (atrFile.getSectorCount() == 1040) {
+					return DosVersion.ATARI_DOS_25;
+				}
+				// A DOS 2 VTOC with an unknown DOS is left to the other providers.
+				return DosVersion.UNKNOWN;
+			}
+		default:
+			if (AtrFile.startsWith(atrFile.getSectorBuffer(1), DOS_30_BOOT_SIGNATURE)) {
+				return DosVersion.ATARI_DOS_30;
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public boolean hasDirectory(DosVersion dosVersion) {
+		return dosVersion == DosVersion.ATARI_DOS_20S || dosVersion == DosVersion.ATARI_DOS_25;
+	}
+
+	@Override
+	public AtrFileSystem createFileSystem(AtrFile atrFile) {
+		return new Dos2FileSystem(atrFile);
+	}
+}
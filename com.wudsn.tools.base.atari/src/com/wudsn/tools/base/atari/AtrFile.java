@@ -21,14 +21,33 @@ package com.wudsn.tools.base.atari;
 
 import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
 
 import com.wudsn.tools.base.common.StringUtility;
 
 /**
- * Utility class to handle ATR image files.<br/>
+ * Utility class to handle ATR image files. The content is accessed through a
+ * {@link ByteBuffer}, which either wraps a byte array or maps a file read-only
+ * into memory. The position of the buffer is never modified, so instances can
+ * be shared between threads.<br/>
+ * The DOS version and the file system are detected lazily by the
+ * {@link AtrFileSystem.Provider} instances when they are first requested, so
+ * sector level access does not pay for parsing the directory structures.
  */
 public final class AtrFile {
 
@@ -41,12 +60,17 @@ public final class AtrFile {
 		public AtrException(String text) {
 			super(text);
 		}
+
+		public AtrException(String text, Throwable cause) {
+			super(text, cause);
+		}
 	}
 
 	public static final class DirectoryEntry {
 		private String directoryFileName;
 		private String dosFileName;
 		private int startSector;
+		private long size;
 
 		/**
 		 * Creates a new directory entry.
@@ -60,20 +84,128 @@ public final class AtrFile {
 		 * @param startSector
 		 */
 		DirectoryEntry(String directoryFileName, String dosFileName, int startSector) {
+			this(directoryFileName, dosFileName, startSector, -1);
+		}
+
+		/**
+		 * Creates a new directory entry.
+		 * 
+		 * @param directoryFileName
+		 *            The file name as in the directory, i.e. 11 characters, not
+		 *            trimmed, no ".", not <code>null</code>.
+		 * @param dosFileName
+		 *            The file in "8.3" notation, i.e. 1..12 characters, trimmed, with
+		 *            ".", prefixed with the path for files in sub-directories, not
+		 *            <code>null</code>.
+		 * @param startSector
+		 *            The first data sector or for SpartaDOS the first sector map
+		 *            sector.
+		 * @param size
+		 *            The file size in bytes or -1 if the directory does not contain
+		 *            the file size.
+		 */
+		DirectoryEntry(String directoryFileName, String dosFileName, int startSector, long size) {
 			this.directoryFileName = directoryFileName;
 			this.dosFileName = dosFileName;
 			this.startSector = startSector;
+			this.size = size;
 		}
 
 		@Override
 		public String toString() {
 			return "directoryFileName=" + directoryFileName + ", dosFileName=" + dosFileName + " startSector="
-					+ startSector;
+					+ startSector + (size >= 0 ? " size=" + size : "");
+		}
+
+		public String getDirectoryFileName() {
+			return directoryFileName;
+		}
+
+		public String getDosFileName() {
+			return dosFileName;
 		}
 
 		public int getStartSector() {
 			return startSector;
 		}
+
+		/**
+		 * Gets the file size as stored in the directory.
+		 * 
+		 * @return The file size in bytes or -1 if the directory does not contain
+		 *         the file size, as for DOS 2.x and MyDOS.
+		 */
+		public long getSize() {
+			return size;
+		}
+	}
+
+	/**
+	 * Immutable directory of the disk, read once and indexed by the file name in
+	 * "8.3" notation.
+	 */
+	private static final class Directory {
+		final List<DirectoryEntry> entries;
+		final Map<String, DirectoryEntry> entriesByDosFileName;
+
+		Directory(List<DirectoryEntry> entries) {
+			this.entries = Collections.unmodifiableList(entries);
+			Map<String, DirectoryEntry> entriesByDosFileName = new HashMap<String, DirectoryEntry>(
+					entries.size() * 2);
+			for (DirectoryEntry entry : entries) {
+				// The first entry wins in case of duplicate names.
+				if (!entriesByDosFileName.containsKey(entry.dosFileName)) {
+					entriesByDosFileName.put(entry.dosFileName, entry);
+				}
+			}
+			this.entriesByDosFileName = entriesByDosFileName;
+		}
+	}
+
+	/**
+	 * Immutable result of the DOS detection.
+	 */
+	private static final class DosDetection {
+		final DosVersion dosVersion;
+		final AtrFileSystem.Provider provider;
+
+		DosDetection(DosVersion dosVersion, AtrFileSystem.Provider provider) {
+			this.dosVersion = dosVersion;
+			this.provider = provider;
+		}
+	}
+
+	/**
+	 * Holder for the file system providers, which are loaded once when the first
+	 * DOS version is detected. The built-in providers come first in a fixed
+	 * order, followed by the additional providers found with
+	 * {@link ServiceLoader}.
+	 */
+	private static final class Providers {
+		static final List<AtrFileSystem.Provider> INSTANCES = loadProviders();
+
+		private static List<AtrFileSystem.Provider> loadProviders() {
+			List<AtrFileSystem.Provider> result = new ArrayList<AtrFileSystem.Provider>();
+			result.add(new AtariDosFileSystemProvider());
+			result.add(new MyDosFileSystemProvider());
+			result.add(new SpartaDosFileSystemProvider());
+			for (AtrFileSystem.Provider provider : ServiceLoader.load(AtrFileSystem.Provider.class,
+					AtrFile.class.getClassLoader())) {
+				if (!isContained(result, provider.getClass())) {
+					result.add(provider);
+				}
+			}
+			return Collections.unmodifiableList(result);
+		}
+
+		private static boolean isContained(List<AtrFileSystem.Provider> providers, Class<?> providerClass) {
+			for (AtrFileSystem.Provider provider : providers) {
+				if (provider.getClass() == providerClass) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 
 	// Sector sizes of the actual disk sectors.
@@ -86,6 +218,9 @@ public final class AtrFile {
 	public static final int PARAGRAPH_SIZE = 16;
 	public static final int MAXIMUM_SIZE = 65536 * SECTOR_SIZE_8K;
 
+	// Separator of directory names and file name for SpartaDOS paths.
+	public static final char PATH_SEPARATOR = '>';
+
 	// First 3 single density sectors, 128 bytes each
 	public static final int BOOT_SECTORS = 3;
 	public static final int BOOT_SECTORS_SIZE_SD = BOOT_SECTORS * SECTOR_SIZE_SD;
@@ -98,18 +233,21 @@ public final class AtrFile {
 	};
 
 	// Instance variables.
-	private final byte[] data;
+	private final ByteBuffer data;
 	private final int sectorSize;
 	private final int sectorCount;
-	private final DosVersion dosVersion;
+	private volatile DosDetection dosDetection;
+	private volatile AtrFileSystem fileSystem;
+	private volatile Directory directory;
 
 	/**
 	 * Creates an ATR file proxy.
 	 * 
 	 * @param data
-	 *            The content of a valid ATR file, not <code>null</code>.
+	 *            The content of a valid ATR file, not <code>null</code>. The
+	 *            content starts at index 0 and ends at the limit of the buffer.
 	 */
-	private AtrFile(byte[] data) {
+	private AtrFile(ByteBuffer data) {
 		if (data == null) {
 			throw new IllegalArgumentException("Parameter 'data' must not be null.");
 		}
@@ -118,84 +256,44 @@ public final class AtrFile {
 		}
 		this.data = data;
 
-		sectorSize = (data[4] & MASK_FF) + ((data[5] & MASK_FF) << 8);
+		sectorSize = (data.get(4) & MASK_FF) + ((data.get(5) & MASK_FF) << 8);
 
-		int paragraphs = (data[2] & MASK_FF);
-		paragraphs += (data[3] & MASK_FF) << 8;
-		paragraphs += (data[6] & MASK_FF) << 16;
-		paragraphs += (data[7] & MASK_FF) << 24;
+		int paragraphs = (data.get(2) & MASK_FF);
+		paragraphs += (data.get(3) & MASK_FF) << 8;
+		paragraphs += (data.get(6) & MASK_FF) << 16;
+		paragraphs += (data.get(7) & MASK_FF) << 24;
 		int dataSize = paragraphs * PARAGRAPH_SIZE;
-		if (data.length >= BOOT_SECTORS_SIZE_SD) {
-			sectorCount = (data.length - BOOT_SECTORS_SIZE_SD) / sectorSize + BOOT_SECTORS;
+		int dataLength = data.limit();
+		if (dataLength >= BOOT_SECTORS_SIZE_SD) {
+			sectorCount = (dataLength - BOOT_SECTORS_SIZE_SD) / sectorSize + BOOT_SECTORS;
 		} else {
 			sectorCount = dataSize / SECTOR_SIZE_SD;
 		}
-
-		// From https://atari.kensclassics.org/dos.htm
-		int vtocSector = 0x168;
-		DosVersion dosVersion = DosVersion.UNKNOWN;
-		if (sectorCount > vtocSector) {
-
-			int bootSectorOffset;
-			int vtocSectorOffset;
-			try {
-				bootSectorOffset = getSectorStartOffset(1);
-				vtocSectorOffset = getSectorStartOffset(vtocSector);
-			} catch (AtrException ex) {
-				throw new RuntimeException(ex);
-			}
-			int vtoc0 = data[vtocSectorOffset] & MASK_FF;
-
-			// From https://guryus.tripod.com/hints.htm, 1995 = 0x7cb
-			int offset1995 = HEADER_SIZE + 0x7cb - 0x700;
-			int peek1995 = data[offset1995] & MASK_FF;
-
-			switch (vtoc0) {
-			case 1:
-				dosVersion = DosVersion.ATARI_DOS_10;
-				break;
-			case 2:
-				switch (peek1995) {
-				case 170:
-					dosVersion = DosVersion.ATARI_DOS_20S;
-					break;
-				case 100:
-					dosVersion = DosVersion.ATARI_DOS_25;
-					break;
-				default:
-					if (sectorCount == 720) {
-						dosVersion = DosVersion.ATARI_DOS_20S;
-					} else if (sectorCount == 1040) {
-						dosVersion = DosVersion.ATARI_DOS_25;
-					}
-					break;
-				}
-				break;
-			default:
-				if (startsWith(bootSectorOffset, new byte[] { 0x01, 0x09, 0x00, 0x32, 0x06, 0x32 })) {
-					dosVersion = DosVersion.ATARI_DOS_30;
-				} else if (startsWith(bootSectorOffset, new byte[] { 0x4d, 0x03, 0x00, 0x07 })) {
-					dosVersion = DosVersion.MYDOS;
-				} else if (startsWith(bootSectorOffset,
-						new byte[] { 0x00, 0x03, 0x00, 0x07, 0x40, 0x07, 0x4c, (byte) 0x80, 0x07 })) {
-					dosVersion = DosVersion.SPARTADOS;
-				} else if (startsWith(bootSectorOffset,
-						new byte[] { 0x00, 0x03, 0x00, 0x030, (byte) 0xe0, 0x07, 0x4c, (byte) 0x80, 0x30 })) {
-					dosVersion = DosVersion.REALDOS;
-				}
-
-			}
-
-		}
-		this.dosVersion = dosVersion;
 	}
 
-	private boolean startsWith(int offset, byte[] data) {
+	/**
+	 * Determines if a buffer starts with a sequence of bytes. The position of the
+	 * buffer is not modified.
+	 * 
+	 * @param buffer
+	 *            The buffer starting at index 0, not <code>null</code>.
+	 * @param data
+	 *            The bytes, not <code>null</code>.
+	 * @return <code>true</code> if the buffer starts with the bytes,
+	 *         <code>false</code> otherwise.
+	 */
+	static boolean startsWith(ByteBuffer buffer, byte[] data) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+		}
 		if (data == null) {
 			throw new IllegalArgumentException("Parameter 'data' must not be null.");
 		}
+		if (buffer.limit() < data.length) {
+			return false;
+		}
 		for (int i = 0; i < data.length; i++) {
-			if (this.data[offset + i] != data[i]) {
+			if (buffer.get(i) != data[i]) {
 				return false;
 			}
 		}
@@ -297,6 +395,26 @@ public final class AtrFile {
 		return false;
 	}
 
+	/**
+	 * Determines if a byte buffer contains a valid ATR header. The position of the
+	 * buffer is not modified.
+	 * 
+	 * @param data
+	 *            The data starting at index 0 and ending at the limit of the
+	 *            buffer, not <code>null</code>.
+	 * @return <code>true</code> If data has the required length and starts with the
+	 *         ATR magic bytes, <code>false</code> otherwise.
+	 */
+	public static boolean isHeader(ByteBuffer data) {
+		if (data == null) {
+			throw new IllegalArgumentException("Parameter 'data' must not be null.");
+		}
+		if (data.limit() >= 16 && data.get(0) == (byte) 0x96 && data.get(1) == (byte) 0x02) {
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Create default boot sectors. Boot sectors are always in single density.
 	 * 
@@ -324,6 +442,71 @@ public final class AtrFile {
 		if (!isHeader(data)) {
 			throw new AtrException("Parameter 'data' is not a valid ATR file");
 		}
+		AtrFile result = new AtrFile(ByteBuffer.wrap(data));
+		return result;
+	}
+
+	/**
+	 * Creates an ATR file proxy which maps the content of the file read-only into
+	 * memory instead of loading it into the heap.
+	 * 
+	 * @param file
+	 *            The ATR file, not <code>null</code>.
+	 * @return The instance, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the file cannot be read or contains an invalid ATR.
+	 */
+	public static AtrFile createInstance(File file) throws AtrException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		RandomAccessFile randomAccessFile;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+		} catch (FileNotFoundException ex) {
+			throw new AtrException("Cannot open file '" + file.getAbsolutePath() + "' for reading.", ex);
+		}
+		try {
+			return createInstance(randomAccessFile.getChannel());
+		} finally {
+			try {
+				// The mapping remains valid after the channel is closed.
+				randomAccessFile.close();
+			} catch (IOException ex) {
+				throw new AtrException("Cannot close file '" + file.getAbsolutePath() + "'.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Creates an ATR file proxy which maps the content of the file channel
+	 * read-only into memory instead of loading it into the heap. The position of
+	 * the channel is not modified and the channel may be closed afterwards.
+	 * 
+	 * @param channel
+	 *            The file channel of the ATR file, not <code>null</code>.
+	 * @return The instance, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the channel cannot be mapped or contains an invalid ATR.
+	 */
+	public static AtrFile createInstance(FileChannel channel) throws AtrException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+		ByteBuffer data;
+		try {
+			long size = channel.size();
+			if (size > HEADER_SIZE + (long) MAXIMUM_SIZE) {
+				throw new AtrException("File size " + size + " exceeds the maximum ATR size of "
+						+ (HEADER_SIZE + MAXIMUM_SIZE) + " bytes.");
+			}
+			data = channel.map(MapMode.READ_ONLY, 0, size);
+		} catch (IOException ex) {
+			throw new AtrException("Cannot map file channel into memory.", ex);
+		}
+		if (!isHeader(data)) {
+			throw new AtrException("Parameter 'channel' is not a valid ATR file");
+		}
 		AtrFile result = new AtrFile(data);
 		return result;
 	}
@@ -337,6 +520,93 @@ public final class AtrFile {
 		return sectorCount;
 	}
 
+	/**
+	 * Gets the sector size of the disk as defined in the header. The boot sectors
+	 * always have {@link #SECTOR_SIZE_SD} bytes.
+	 * 
+	 * @return The sector size of the disk in bytes, a positive integer.
+	 */
+	public int getSectorSize() {
+		return sectorSize;
+	}
+
+	/**
+	 * Gets the DOS version detected from the boot sectors and the VTOC. The DOS
+	 * version is detected once when it is first requested.
+	 * 
+	 * @return The DOS version, not <code>null</code>.
+	 */
+	public DosVersion getDosVersion() {
+		return getDosDetection().dosVersion;
+	}
+
+	private DosDetection getDosDetection() {
+		DosDetection result = dosDetection;
+		if (result == null) {
+			synchronized (this) {
+				result = dosDetection;
+				if (result == null) {
+					result = detectDos();
+					dosDetection = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Detects the DOS version. The first provider which returns a DOS version
+	 * other than {@link DosVersion#UNKNOWN} wins. Providers which cannot read
+	 * the sectors they need do not recognize the image.
+	 * 
+	 * @return The detection, not <code>null</code>.
+	 */
+	private DosDetection detectDos() {
+		// All supported DOS versions have their VTOC or boot sector data
+		// before sector 360.
+		if (sectorCount > AtrVtoc.VTOC_SECTOR) {
+			for (AtrFileSystem.Provider provider : Providers.INSTANCES) {
+				DosVersion dosVersion;
+				try {
+					dosVersion = provider.detectDosVersion(this);
+				} catch (AtrException ex) {
+					dosVersion = null;
+				}
+				if (dosVersion != null && dosVersion != DosVersion.UNKNOWN) {
+					return new DosDetection(dosVersion, provider);
+				}
+			}
+		}
+		return new DosDetection(DosVersion.UNKNOWN, null);
+	}
+
+	/**
+	 * Gets the file system of the detected DOS version. The file system is
+	 * created once when it is first requested.
+	 * 
+	 * @return The file system, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS version is not supported.
+	 */
+	private AtrFileSystem getFileSystem() throws AtrException {
+		AtrFileSystem result = fileSystem;
+		if (result == null) {
+			DosDetection detection = getDosDetection();
+			if (detection.provider == null || !detection.provider.hasDirectory(detection.dosVersion)) {
+				throw new AtrException("Cannot get directory of unknown or unsupported DOS version "
+						+ detection.dosVersion + ".");
+			}
+			synchronized (this) {
+				result = fileSystem;
+				if (result == null) {
+					result = detection.provider.createFileSystem(this);
+					fileSystem = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the size of a sector in bytes.
 	 * 
@@ -395,11 +665,95 @@ public final class AtrFile {
 		}
 		int sectorSize = getSectorSize(sectorNumber);
 		byte[] sector = new byte[sectorSize];
-		int offset = getSectorStartOffset(sectorNumber);
-		System.arraycopy(data, offset, sector, 0, sectorSize);
+		getSector(sectorNumber, sector, 0);
 		return sector;
 	}
 
+	/**
+	 * Copies the content of a sector into a buffer supplied by the caller.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @param buffer
+	 *            The buffer, not <code>null</code>. It must have room for
+	 *            {@link #getSectorSize(int)} bytes starting at the offset.
+	 * @param offset
+	 *            The offset in the buffer, a non-negative integer.
+	 * @return The number of bytes copied, i.e. the size of the sector.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public int getSector(int sectorNumber, byte[] buffer, int offset) throws AtrException {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException(
+					"Parameter 'offset' must not be negative. Specified value is " + offset + ".");
+		}
+		int sectorSize = getSectorSize(sectorNumber);
+		if (offset + sectorSize > buffer.length) {
+			throw new IllegalArgumentException("Parameter 'buffer' has length " + buffer.length
+					+ " which is too small for " + sectorSize + " bytes at offset " + offset + ".");
+		}
+		copyData(getSectorStartOffset(sectorNumber), buffer, offset, sectorSize);
+		return sectorSize;
+	}
+
+	/**
+	 * Gets a read-only view of a sector. The content is not copied.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @return The read-only buffer with position 0 and the sector size as limit,
+	 *         not <code>null</code>.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public ByteBuffer getSectorBuffer(int sectorNumber) throws AtrException {
+		int sectorSize = getSectorSize(sectorNumber);
+		int offset = getSectorStartOffset(sectorNumber);
+		ByteBuffer buffer = data.asReadOnlyBuffer();
+		buffer.limit(offset + sectorSize);
+		buffer.position(offset);
+		return buffer.slice();
+	}
+
+	/**
+	 * Gets a copy of the ATR header.
+	 * 
+	 * @return The header with {@link #HEADER_SIZE} bytes, not <code>null</code>.
+	 */
+	byte[] getHeader() {
+		byte[] header = new byte[HEADER_SIZE];
+		copyData(0, header, 0, HEADER_SIZE);
+		return header;
+	}
+
+	/**
+	 * Copies bytes from the image data without modifying the position of the data
+	 * buffer. Mapped data is copied with absolute reads, so no view has to be
+	 * allocated.
+	 * 
+	 * @param dataOffset
+	 *            The offset in the image data, a non-negative integer.
+	 * @param buffer
+	 *            The target buffer, not <code>null</code>.
+	 * @param offset
+	 *            The offset in the target buffer, a non-negative integer.
+	 * @param length
+	 *            The number of bytes to copy, a non-negative integer.
+	 */
+	private void copyData(int dataOffset, byte[] buffer, int offset, int length) {
+		if (data.hasArray()) {
+			System.arraycopy(data.array(), data.arrayOffset() + dataOffset, buffer, offset, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				buffer[offset + i] = data.get(dataOffset + i);
+			}
+		}
+	}
+
 	public byte[] getSectors(int startSectorNumber, int endSectorNumber, int sectorSize) throws AtrException {
 		if (startSectorNumber <= 0) {
 			throw new AtrException(
@@ -418,29 +772,83 @@ public final class AtrFile {
 					+ ". Specified value is " + endSectorNumber + ".");
 		}
 
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int count = Math.max(0, endSectorNumber - startSectorNumber + 1);
+		byte[] result = new byte[count * sectorSize];
+		int offset = 0;
 		for (int sectorNumber = startSectorNumber; sectorNumber <= endSectorNumber; sectorNumber++) {
-			bos.write(getSector(sectorNumber), 0, sectorSize);
+			if (sectorSize > getSectorSize(sectorNumber)) {
+				throw new AtrException("Parameter 'sectorSize' must not be larger than the size of sector "
+						+ sectorNumber + ". Specified value is " + sectorSize + ".");
+			}
+			copyData(getSectorStartOffset(sectorNumber), result, offset, sectorSize);
+			offset += sectorSize;
 		}
-		return bos.toByteArray();
+		return result;
 	}
 
 	public boolean hasDirectory() {
-		switch (dosVersion) {
-		case ATARI_DOS_20S:
-		case ATARI_DOS_25:
-		case MYDOS:
-			return true;
-		default:
-			return false;
-		}
+		DosDetection detection = getDosDetection();
+		return detection.provider != null && detection.provider.hasDirectory(detection.dosVersion);
+	}
+
+	/**
+	 * Reads the VTOC of the disk. For SpartaDOS and RealDOS, this is the bitmap of
+	 * the free sectors. Each call returns a new instance.
+	 * 
+	 * @return The VTOC, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS version is not supported or the VTOC cannot be read.
+	 */
+	public AtrVtoc getVtoc() throws AtrException {
+		return getFileSystem().getVtoc();
 	}
 
+	/**
+	 * Gets the directory entries of the disk. The directory is read once and
+	 * cached.
+	 * 
+	 * @return The unmodifiable list of directory entries, may be empty, not
+	 *         <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS version is not supported or an error during reading
+	 *             occurs.
+	 */
 	public List<DirectoryEntry> getDirectory() throws AtrException {
-		return getDirectory("");
+		return getCachedDirectory().entries;
 
 	}
 
+	/**
+	 * Gets the directory entry of a file.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The directory entry or <code>null</code> if the file does not exist.
+	 * @throws AtrException
+	 *             If the DOS version is not supported or an error during reading
+	 *             occurs.
+	 */
+	public DirectoryEntry getDirectoryEntry(String fileName) throws AtrException {
+		if (fileName == null) {
+			throw new IllegalArgumentException("Parameter 'fileName' must not be null.");
+		}
+		return getCachedDirectory().entriesByDosFileName.get(fileName);
+	}
+
+	private Directory getCachedDirectory() throws AtrException {
+		Directory result = directory;
+		if (result == null) {
+			synchronized (this) {
+				result = directory;
+				if (result == null) {
+					result = new Directory(readDirectory());
+					directory = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the binary content of a file.
 	 * 
@@ -457,96 +865,80 @@ public final class AtrFile {
 		if (StringUtility.isEmpty(fileName)) {
 			return null;
 		}
-		List<DirectoryEntry> entries = getDirectory(fileName);
-		if (entries.isEmpty()) {
+		DirectoryEntry directoryEntry = getDirectoryEntry(fileName);
+		if (directoryEntry == null) {
 			return null;
 		}
-		DirectoryEntry directoryEntry = entries.get(0);
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		int sectorNumber = directoryEntry.getStartSector();
-		while (sectorNumber != 0) {
-			if (usedSectors != null) {
-				usedSectors.add(Integer.valueOf(sectorNumber));
-			}
+		return getFileSystem().getFileContent(directoryEntry, usedSectors);
+	}
 
-			byte[] sector = getSector(sectorNumber);
-			int sectorSize = sector.length;
-			int bytesUsed = sector[sectorSize - 1] & MASK_FF;
-			// The upper 6 bits of the high byte are the file
-			// number. Only the lower 2 bits are part of the
-			// sector number.
-			int nextSectorLow = (sector[sectorSize - 2] & MASK_FF);
-			int nextSectorHigh = (sector[sectorSize - 3] & MASK_FF & 0x03);
-			int nextSector = nextSectorLow + (nextSectorHigh << 8);
-
-			// For a 128 bytes byte, the structure is 125 data bytes and the
-			// last 3 contain the link to next sector
-			// and file # (which is 6 bits), limiting to 64 files per disk
-
-			bos.write(sector, 0, bytesUsed);
-			sectorNumber = nextSector;
-		}
-		return bos.toByteArray();
-	}
-
-	private List<DirectoryEntry> getDirectory(String fileNameFilter) throws AtrException {
-		if (fileNameFilter == null) {
-			throw new IllegalArgumentException("Parameter 'fileNameFilter' must not be null.");
-		}
-		if (!hasDirectory()) {
-			throw new AtrException("Cannot get directory of unknown or unsupported DOS version " + dosVersion + ".");
-		}
-
-		List<DirectoryEntry> result = new ArrayList<DirectoryEntry>();
-		int sectorNumber = 361;
-		int entryWidth = 16;
-
-		boolean complete = false;
-		while (!complete) {
-			byte[] sector = getSector(sectorNumber);
-			int sectorSize = getSectorSize(sectorNumber);
-			// Only the 128 bytes of the directory sectors are use, irrespective
-			// of the density.
-			int relevantSectorSize = Math.min(AtrFile.SECTOR_SIZE_SD, sectorSize);
-			int offset = 0;
-			while (offset < relevantSectorSize && !complete) {
-				byte status = sector[offset];
-				if (status == 0x00) {
-					complete = true;
-				} else {
-					// Entry not deleted and in use?
-					if ((status & 0x80) == 0x00 && (status & 0x40) != 0x00) {
-						byte[] fileNameArray = new byte[8];
-						System.arraycopy(sector, offset + 5, fileNameArray, 0, 8);
-						byte[] extensionArray = new byte[3];
-						String fileName = new String(fileNameArray);
-						System.arraycopy(sector, offset + 5 + 8, extensionArray, 0, 3);
-						String extension = new String(extensionArray);
-						String dosFileName = fileName.trim() + "." + extension.trim();
-
-						if (StringUtility.isEmpty(fileNameFilter) || dosFileName.equals(fileNameFilter)) {
-							int startSectorLow = (sector[offset + 3] & MASK_FF);
-							int startSectorHigh = (sector[offset + 4] & MASK_FF);
-							int startSector = startSectorLow + (startSectorHigh << 8);
-
-							DirectoryEntry directoryEntry = new DirectoryEntry(fileName + extension, dosFileName,
-									startSector);
-							result.add(directoryEntry);
-						}
-					}
-				}
-				offset += entryWidth;
-			}
-			// Skip unused parts.
-			offset += (sectorSize - relevantSectorSize);
-			sectorNumber++;
+	/**
+	 * Gets an input stream which reads the binary content of a file by following
+	 * the sector links lazily. The content is not copied into memory as a whole.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The input stream or <code>null</code> if the file does not exist.
+	 * @throws AtrException
+	 *             If an error during reading the directory occurs.
+	 */
+	public InputStream getFileContentInputStream(String fileName) throws AtrException {
+		if (StringUtility.isEmpty(fileName)) {
+			return null;
+		}
+		DirectoryEntry directoryEntry = getDirectoryEntry(fileName);
+		if (directoryEntry == null) {
+			return null;
+		}
+		return getFileSystem().getFileContentInputStream(directoryEntry);
+	}
+
+	/**
+	 * Gets an input stream which reads the binary content of a file. Use this
+	 * method instead of {@link #getFileContentInputStream(String)} to read all
+	 * files of the directory, because directories can contain duplicate file
+	 * names.
+	 * 
+	 * @param directoryEntry
+	 *            The directory entry from {@link #getDirectory()}, not
+	 *            <code>null</code>.
+	 * @return The input stream, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS version is not supported or the file cannot be
+	 *             opened.
+	 */
+	public InputStream getFileContentInputStream(DirectoryEntry directoryEntry) throws AtrException {
+		if (directoryEntry == null) {
+			throw new IllegalArgumentException("Parameter 'directoryEntry' must not be null.");
+		}
+		return getFileSystem().getFileContentInputStream(directoryEntry);
+	}
 
+	/**
+	 * Gets a channel which reads the binary content of a file by following the
+	 * sector links lazily.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The channel or <code>null</code> if the file does not exist.
+	 * @throws AtrException
+	 *             If an error during reading the directory occurs.
+	 * @see #getFileContentInputStream(String)
+	 */
+	public ReadableByteChannel getFileContentChannel(String fileName) throws AtrException {
+		InputStream inputStream = getFileContentInputStream(fileName);
+		if (inputStream == null) {
+			return null;
 		}
-		return result;
+		return Channels.newChannel(inputStream);
+	}
+
+	private List<DirectoryEntry> readDirectory() throws AtrException {
+		return getFileSystem().readDirectory();
 	}
 
 	@Override
 	public String toString() {
-		return "sectorSize=" + sectorSize + ", sectorCount=" + sectorCount + ", DOS=" + dosVersion;
+		return "sectorSize=" + sectorSize + ", sectorCount=" + sectorCount + ", DOS=" + getDosVersion();
 	}
 }
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DirectoryEntry;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * Bulk analyzer for ATR image files in a folder tree. The images are analyzed
+ * in parallel with a bounded number of images and bytes in flight, see
+ * {@link AtrFileWalker}. Results are reported to a {@link Listener} as soon as
+ * an image has been analyzed.<br/>
+ * Images up to {@link #MAX_HEAP_IMAGE_SIZE} bytes are read into the heap, so
+ * the bound applies to the memory actually in use. Larger images are mapped
+ * into memory. A mapping is only released when its {@link AtrFile} is garbage
+ * collected, so the bound does not limit the number of live mappings.
+ * 
+ * @author Peter Dell
+ */
+public final class AtrFileAnalyzer {
+
+	/**
+	 * Callback for analysis results. The methods are called from the worker
+	 * threads, so implementations must be thread safe.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when an image has been analyzed.
+		 * 
+		 * @param result
+		 *            The result, not <code>null</code>.
+		 */
+		public void imageAnalyzed(Result result);
+	}
+
+	/**
+	 * Analysis result for a single file in the directory of an image.
+	 */
+	public static final class FileResult {
+		private final DirectoryEntry directoryEntry;
+		private final long size;
+		private final long crc32;
+		private final String errorMessage;
+
+		FileResult(DirectoryEntry directoryEntry, long size, long crc32, String errorMessage) {
+			this.directoryEntry = directoryEntry;
+			this.size = size;
+			this.crc32 = crc32;
+			this.errorMessage = errorMessage;
+		}
+
+		public DirectoryEntry getDirectoryEntry() {
+			return directoryEntry;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getCRC32() {
+			return crc32;
+		}
+
+		/**
+		 * Gets the error message if the content of the file could not be read.
+		 * 
+		 * @return The error message or <code>null</code>.
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return "dosFileName=" + directoryEntry.getDosFileName() + " size=" + size + " crc32="
+					+ Long.toHexString(crc32) + (errorMessage != null ? " error=" + errorMessage : "");
+		}
+	}
+
+	/**
+	 * Analysis result for a single image.
+	 */
+	public static final class Result {
+		private final File file;
+		private final int sectorSize;
+		private final int sectorCount;
+		private final DosVersion dosVersion;
+		private final List<FileResult> fileResults;
+		private final String errorMessage;
+
+		Result(File file, int sectorSize, int sectorCount, DosVersion dosVersion, List<FileResult> fileResults,
+				String errorMessage) {
+			this.file = file;
+			this.sectorSize = sectorSize;
+			this.sectorCount = sectorCount;
+			this.dosVersion = dosVersion;
+			this.fileResults = Collections.unmodifiableList(fileResults);
+			this.errorMessage = errorMessage;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public int getSectorSize() {
+			return sectorSize;
+		}
+
+		public int getSectorCount() {
+			return sectorCount;
+		}
+
+		public DosVersion getDosVersion() {
+			return dosVersion;
+		}
+
+		/**
+		 * Gets the results for the files in the directory.
+		 * 
+		 * @return The unmodifiable list of results, empty if the image has no
+		 *         supported directory, not <code>null</code>.
+		 */
+		public List<FileResult> getFileResults() {
+			return fileResults;
+		}
+
+		/**
+		 * Gets the error message if the image or its directory could not be read.
+		 * 
+		 * @return The error message or <code>null</code>.
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return "file=" + file + " sectorSize=" + sectorSize + " sectorCount=" + sectorCount + " DOS="
+					+ dosVersion + " files=" + fileResults + (errorMessage != null ? " error=" + errorMessage : "");
+		}
+	}
+
+	// Default limit for the sum of the image sizes in flight.
+	public static final long DEFAULT_MAX_IN_FLIGHT_SIZE = 256L * 1024 * 1024;
+
+	// Maximum size of images which are read into the heap instead of being
+	// mapped.
+	public static final int MAX_HEAP_IMAGE_SIZE = 16 * 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final AtrFileWalker walker;
+
+	/**
+	 * Creates an analyzer.
+	 * 
+	 * @param threadCount
+	 *            The number of worker threads, a positive integer.
+	 * @param maxInFlightSize
+	 *            The maximum sum of the sizes in bytes of the images analyzed at
+	 *            the same time, a positive integer.
+	 */
+	public AtrFileAnalyzer(int threadCount, long maxInFlightSize) {
+		walker = new AtrFileWalker("AtrFileAnalyzer", threadCount, maxInFlightSize);
+	}
+
+	/**
+	 * Creates an analyzer with one worker thread per available processor and the
+	 * {@link #DEFAULT_MAX_IN_FLIGHT_SIZE}.
+	 */
+	public AtrFileAnalyzer() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT_SIZE);
+	}
+
+	/**
+	 * Analyzes all ATR files in a folder and its sub-folders. The method returns
+	 * after all images have been analyzed and reported.
+	 * 
+	 * @param folder
+	 *            The root folder, not <code>null</code>.
+	 * @param listener
+	 *            The listener which receives the results, not <code>null</code>.
+	 * @return The number of images analyzed, a non-negative integer.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	public int analyze(File folder, final Listener listener) throws InterruptedException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Parameter 'folder' must not be null.");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter 'listener' must not be null.");
+		}
+
+		return walker.walk(folder, new AtrFileWalker.Task() {
+
+			@Override
+			public void process(File file) {
+				listener.imageAnalyzed(analyze(file));
+			}
+		});
+	}
+
+	/**
+	 * Analyzes a single ATR file.
+	 * 
+	 * @param file
+	 *            The ATR file, not <code>null</code>.
+	 * @return The result, not <code>null</code>.
+	 */
+	public static Result analyze(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		List<FileResult> fileResults = new ArrayList<FileResult>();
+		AtrFile atrFile;
+		try {
+			atrFile = AtrFileWalker.openImage(file);
+		} catch (AtrException ex) {
+			return new Result(file, 0, 0, DosVersion.UNKNOWN, fileResults, ex.getMessage());
+		} catch (RuntimeException ex) {
+			// Corrupt headers must not stop the analysis of the other images.
+			return new Result(file, 0, 0, DosVersion.UNKNOWN, fileResults, ex.toString());
+		}
+		String errorMessage = null;
+		try {
+			if (atrFile.hasDirectory()) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				CRC32 crc32 = new CRC32();
+				for (DirectoryEntry directoryEntry : atrFile.getDirectory()) {
+					fileResults.add(analyze(atrFile, directoryEntry, buffer, crc32));
+				}
+			}
+		} catch (AtrException ex) {
+			errorMessage = ex.getMessage();
+		} catch (RuntimeException ex) {
+			return new Result(file, atrFile.getSectorSize(), atrFile.getSectorCount(), DosVersion.UNKNOWN,
+					fileResults, ex.toString());
+		}
+		return new Result(file, atrFile.getSectorSize(), atrFile.getSectorCount(), atrFile.getDosVersion(),
+				fileResults, errorMessage);
+	}
+
+	private static FileResult analyze(AtrFile atrFile, DirectoryEntry directoryEntry, byte[] buffer, CRC32 crc32)
+			throws AtrException {
+		crc32.reset();
+		long size = 0;
+		String errorMessage = null;
+		InputStream inputStream = atrFile.getFileContentInputStream(directoryEntry);
+		try {
+			int count;
+			while ((count = inputStream.read(buffer, 0, buffer.length)) > 0) {
+				crc32.update(buffer, 0, count);
+				size += count;
+			}
+		} catch (IOException ex) {
+			errorMessage = ex.getMessage();
+		}
+		return new FileResult(directoryEntry, size, crc32.getValue(), errorMessage);
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import java.io.InputStream;
+import java.util.List;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DirectoryEntry;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * File system of a DOS on an ATR image. Instances are created by a
+ * {@link Provider} when the directory or the content of a file is first
+ * requested from an {@link AtrFile}. Implementations must be thread safe,
+ * because an {@link AtrFile} can be shared between threads.
+ * 
+ * @author Peter Dell
+ */
+public interface AtrFileSystem {
+
+	/**
+	 * Service interface for the detection of the DOS of an ATR image and the
+	 * creation of its file system. The built-in providers for Atari DOS, MyDOS
+	 * and SpartaDOS are asked first in this order. Additional providers are
+	 * discovered with {@link java.util.ServiceLoader} in the order of the
+	 * "META-INF/services/com.wudsn.tools.base.atari.AtrFileSystem$Provider"
+	 * resources and must have a public constructor without parameters. The
+	 * first provider which recognizes an image determines its DOS version.
+	 */
+	public interface Provider {
+
+		/**
+		 * Detects the DOS of an image. The method is called only for images with
+		 * more than 360 sectors and must only read the sectors it needs.
+		 * 
+		 * @param atrFile
+		 *            The ATR file, not <code>null</code>.
+		 * @return The DOS version or <code>null</code> if the provider does not
+		 *         recognize the image. {@link DosVersion#UNKNOWN} is treated
+		 *         like <code>null</code>, so the next provider is asked.
+		 * @throws AtrException
+		 *             If the sectors cannot be read. The provider is then treated
+		 *             as not recognizing the image.
+		 */
+		public DosVersion detectDosVersion(AtrFile atrFile) throws AtrException;
+
+		/**
+		 * Determines if the provider supports the directory of a DOS version.
+		 * 
+		 * @param dosVersion
+		 *            The DOS version detected by this provider, not
+		 *            <code>null</code>.
+		 * @return <code>true</code> if {@link #createFileSystem(AtrFile)} can be
+		 *         called.
+		 */
+		public boolean hasDirectory(DosVersion dosVersion);
+
+		/**
+		 * Creates the file system for an image detected by this provider and for
+		 * which {@link #hasDirectory(DosVersion)} is <code>true</code>.
+		 * 
+		 * @param atrFile
+		 *            The ATR file, not <code>null</code>.
+		 * @return The file system, not <code>null</code>.
+		 */
+		public AtrFileSystem createFileSystem(AtrFile atrFile);
+	}
+
+	/**
+	 * Reads the directory including sub-directories.
+	 * 
+	 * @return The modifiable list of directory entries, may be empty, not
+	 *         <code>null</code>.
+	 * @throws AtrException
+	 *             If the directory cannot be read.
+	 */
+	public List<DirectoryEntry> readDirectory() throws AtrException;
+
+	/**
+	 * Gets the binary content of a file.
+	 * 
+	 * @param directoryEntry
+	 *            The directory entry, not <code>null</code>.
+	 * @param usedSectors
+	 *            The list of sector numbers for used sectors or <code>null</code>.
+	 * @return The binary content, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the content cannot be read.
+	 */
+	public byte[] getFileContent(DirectoryEntry directoryEntry, List<Integer> usedSectors) throws AtrException;
+
+	/**
+	 * Gets an input stream which reads the binary content of a file lazily.
+	 * 
+	 * @param directoryEntry
+	 *            The directory entry, not <code>null</code>.
+	 * @return The input stream, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the file cannot be opened.
+	 */
+	public InputStream getFileContentInputStream(DirectoryEntry directoryEntry) throws AtrException;
+
+	/**
+	 * Reads the VTOC or bitmap of the free sectors.
+	 * 
+	 * @return The VTOC, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS has no supported VTOC or it cannot be read.
+	 */
+	public AtrVtoc getVtoc() throws AtrException;
+}
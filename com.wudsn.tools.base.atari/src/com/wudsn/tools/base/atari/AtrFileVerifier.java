@@ -0,0 +1,605 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_ENTRIES_PER_SECTOR;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_ENTRY_SIZE;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_SECTOR;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_SECTORS;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.ENTRY_SECTOR_COUNT_OFFSET;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.ENTRY_START_SECTOR_OFFSET;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_DELETED;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_IN_USE;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_MYDOS_LINKS;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_SUBDIRECTORY;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.LINK_SIZE;
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * Integrity verifier for ATR images with DOS 2.0S, DOS 2.5 or MyDOS
+ * directories. The sector chains of all files are walked once. The sectors
+ * which have been visited are recorded in a bitmap, so cycles and cross-linked
+ * files are detected immediately and the bitmap can be compared with the VTOC
+ * 64 sectors at a time. MyDOS sub-directories are verified recursively.
+ * Folder trees are verified in parallel like in {@link AtrFileAnalyzer}, see
+ * {@link AtrFileWalker}.
+ * 
+ * @author Peter Dell
+ */
+public final class AtrFileVerifier {
+
+	/**
+	 * Callback for verification results. The methods are called from the worker
+	 * threads, so implementations must be thread safe.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when an image has been verified.
+		 * 
+		 * @param result
+		 *            The result, not <code>null</code>.
+		 */
+		public void imageVerified(Result result);
+	}
+
+	/**
+	 * Types of problems.
+	 */
+	public static enum ProblemType {
+		/**
+		 * A sector link or start sector points outside of the disk.
+		 */
+		INVALID_LINK,
+
+		/**
+		 * The number of bytes used in a sector is larger than the data area.
+		 */
+		INVALID_BYTE_COUNT,
+
+		/**
+		 * The sector chain of a file links back to one of its own sectors.
+		 */
+		CYCLE,
+
+		/**
+		 * The sector chain of a file links to a sector of another file.
+		 */
+		CROSS_LINK,
+
+		/**
+		 * The file number in the link bytes of a sector does not match the
+		 * directory entry.
+		 */
+		FILE_NUMBER_MISMATCH,
+
+		/**
+		 * The sector count in the directory entry does not match the chain.
+		 */
+		SECTOR_COUNT_MISMATCH,
+
+		/**
+		 * A sector which is used by a file or the DOS is free in the VTOC.
+		 */
+		USED_SECTOR_FREE,
+
+		/**
+		 * A sector which is not used by any file or the DOS is used in the VTOC.
+		 */
+		LOST_SECTOR,
+
+		/**
+		 * The free sector count in the VTOC does not match the bitmap.
+		 */
+		FREE_SECTOR_COUNT_MISMATCH
+	}
+
+	/**
+	 * Problem found in an image.
+	 */
+	public static final class Problem {
+		private final ProblemType type;
+		private final String dosFileName;
+		private final int sectorNumber;
+		private final String message;
+
+		Problem(ProblemType type, String dosFileName, int sectorNumber, String message) {
+			this.type = type;
+			this.dosFileName = dosFileName;
+			this.sectorNumber = sectorNumber;
+			this.message = message;
+		}
+
+		public ProblemType getType() {
+			return type;
+		}
+
+		/**
+		 * Gets the name of the file which has the problem.
+		 * 
+		 * @return The file name in "8.3" notation or <code>null</code> if the
+		 *         problem is not related to a file.
+		 */
+		public String getDosFileName() {
+			return dosFileName;
+		}
+
+		/**
+		 * Gets the number of the sector where the problem was found.
+		 * 
+		 * @return The sector number or 0 if the problem is not related to a
+		 *         sector.
+		 */
+		public int getSectorNumber() {
+			return sectorNumber;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return type + ": " + message;
+		}
+	}
+
+	/**
+	 * State of the verification of a single image.
+	 */
+	private static final class Verification {
+		final AtrFile atrFile;
+
+		// Owner of each sector as index in "ownerNames" + 1, so that cycles
+		// and cross links can be distinguished.
+		final int[] owners;
+		final List<String> ownerNames;
+		final long[] usedBits;
+		final List<Problem> problems;
+		int fileCount;
+		int usedSectorCount;
+
+		Verification(AtrFile atrFile) {
+			this.atrFile = atrFile;
+			int sectorCount = atrFile.getSectorCount();
+			owners = new int[sectorCount + 1];
+			ownerNames = new ArrayList<String>();
+			usedBits = new long[(sectorCount >>> 6) + 1];
+			problems = new ArrayList<Problem>();
+		}
+	}
+
+	/**
+	 * Verification result for a single image.
+	 */
+	public static final class Result {
+		private final File file;
+		private final DosVersion dosVersion;
+		private final int fileCount;
+		private final int usedSectorCount;
+		private final List<Problem> problems;
+		private final String errorMessage;
+
+		Result(File file, DosVersion dosVersion, int fileCount, int usedSectorCount, List<Problem> problems,
+				String errorMessage) {
+			this.file = file;
+			this.dosVersion = dosVersion;
+			this.fileCount = fileCount;
+			this.usedSectorCount = usedSectorCount;
+			this.problems = Collections.unmodifiableList(problems);
+			this.errorMessage = errorMessage;
+		}
+
+		/**
+		 * Gets the file of the image.
+		 * 
+		 * @return The file or <code>null</code> if the image was not read from a
+		 *         file.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		public DosVersion getDosVersion() {
+			return dosVersion;
+		}
+
+		/**
+		 * Gets the number of files in the directory and its sub-directories.
+		 * Sub-directories are not counted as files.
+		 * 
+		 * @return The number of files, a non-negative integer.
+		 */
+		public int getFileCount() {
+			return fileCount;
+		}
+
+		/**
+		 * Gets the number of sectors used by the files and sub-directories.
+		 * 
+		 * @return The number of sectors, a non-negative integer.
+		 */
+		public int getUsedSectorCount() {
+			return usedSectorCount;
+		}
+
+		/**
+		 * Gets the problems found.
+		 * 
+		 * @return The unmodifiable list of problems, may be empty, not
+		 *         <code>null</code>.
+		 */
+		public List<Problem> getProblems() {
+			return problems;
+		}
+
+		/**
+		 * Gets the error message if the image could not be verified at all.
+		 * 
+		 * @return The error message or <code>null</code>.
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		/**
+		 * Determines if the image was verified without problems.
+		 * 
+		 * @return <code>true</code> if there is no error and no problem.
+		 */
+		public boolean isValid() {
+			return errorMessage == null && problems.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "file=" + file + " DOS=" + dosVersion + " files=" + fileCount + " usedSectors="
+					+ usedSectorCount + " problems=" + problems
+					+ (errorMessage != null ? " error=" + errorMessage : "");
+		}
+	}
+
+	private final AtrFileWalker walker;
+
+	/**
+	 * Creates a verifier.
+	 * 
+	 * @param threadCount
+	 *            The number of worker threads, a positive integer.
+	 * @param maxInFlightSize
+	 *            The maximum sum of the sizes in bytes of the images verified at
+	 *            the same time, a positive integer.
+	 */
+	public AtrFileVerifier(int threadCount, long maxInFlightSize) {
+		walker = new AtrFileWalker("AtrFileVerifier", threadCount, maxInFlightSize);
+	}
+
+	/**
+	 * Creates a verifier with one worker thread per available processor and the
+	 * {@link AtrFileAnalyzer#DEFAULT_MAX_IN_FLIGHT_SIZE}.
+	 */
+	public AtrFileVerifier() {
+		this(Runtime.getRuntime().availableProcessors(), AtrFileAnalyzer.DEFAULT_MAX_IN_FLIGHT_SIZE);
+	}
+
+	/**
+	 * Verifies all ATR files in a folder and its sub-folders. The method returns
+	 * after all images have been verified and reported.
+	 * 
+	 * @param folder
+	 *            The root folder, not <code>null</code>.
+	 * @param listener
+	 *            The listener which receives the results, not <code>null</code>.
+	 * @return The number of images verified, a non-negative integer.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	public int verify(File folder, final Listener listener) throws InterruptedException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Parameter 'folder' must not be null.");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter 'listener' must not be null.");
+		}
+
+		return walker.walk(folder, new AtrFileWalker.Task() {
+
+			@Override
+			public void process(File file) {
+				listener.imageVerified(verify(file));
+			}
+		});
+	}
+
+	/**
+	 * Verifies a single ATR file.
+	 * 
+	 * @param file
+	 *            The ATR file, not <code>null</code>.
+	 * @return The result, not <code>null</code>.
+	 */
+	public static Result verify(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		AtrFile atrFile;
+		try {
+			atrFile = AtrFileWalker.openImage(file);
+		} catch (AtrException ex) {
+			return new Result(file, DosVersion.UNKNOWN, 0, 0, new ArrayList<Problem>(), ex.getMessage());
+		} catch (RuntimeException ex) {
+			// Corrupt headers must not stop the verification of the other images.
+			return new Result(file, DosVersion.UNKNOWN, 0, 0, new ArrayList<Problem>(), ex.toString());
+		}
+		try {
+			return verify(file, atrFile);
+		} catch (RuntimeException ex) {
+			return new Result(file, DosVersion.UNKNOWN, 0, 0, new ArrayList<Problem>(), ex.toString());
+		}
+	}
+
+	/**
+	 * Verifies an ATR image.
+	 * 
+	 * @param atrFile
+	 *            The ATR file, not <code>null</code>.
+	 * @return The result, not <code>null</code>.
+	 */
+	public static Result verify(AtrFile atrFile) {
+		if (atrFile == null) {
+			throw new IllegalArgumentException("Parameter 'atrFile' must not be null.");
+		}
+		return verify(null, atrFile);
+	}
+
+	private static Result verify(File file, AtrFile atrFile) {
+		DosVersion dosVersion = atrFile.getDosVersion();
+		switch (dosVersion) {
+		case ATARI_DOS_20S:
+		case ATARI_DOS_25:
+		case MYDOS:
+			break;
+		default:
+			return new Result(file, dosVersion, 0, 0, new ArrayList<Problem>(),
+					"Cannot verify unknown or unsupported DOS version " + dosVersion + ".");
+		}
+		Verification verification = new Verification(atrFile);
+		try {
+			AtrVtoc vtoc = atrFile.getVtoc();
+
+			// The DOS uses the boot, VTOC and directory sectors.
+			for (int sectorNumber = 1; sectorNumber <= AtrFile.BOOT_SECTORS; sectorNumber++) {
+				setBit(verification.usedBits, sectorNumber);
+			}
+			for (int sectorNumber : vtoc.getVtocSectorNumbers()) {
+				setBit(verification.usedBits, sectorNumber);
+			}
+			for (int sectorNumber = DIRECTORY_SECTOR; sectorNumber < DIRECTORY_SECTOR
+					+ DIRECTORY_SECTORS; sectorNumber++) {
+				setBit(verification.usedBits, sectorNumber);
+			}
+
+			verifyDirectory(verification, DIRECTORY_SECTOR, "");
+			verifyVtoc(vtoc, verification.usedBits, verification.problems);
+		} catch (AtrException ex) {
+			return new Result(file, dosVersion, verification.fileCount, verification.usedSectorCount,
+					verification.problems, ex.getMessage());
+		}
+		return new Result(file, dosVersion, verification.fileCount, verification.usedSectorCount,
+				verification.problems, null);
+	}
+
+	/**
+	 * Walks the sector chains of all files in a directory and its
+	 * sub-directories. The sectors of the directory itself must already be
+	 * marked as used.
+	 * 
+	 * @param firstDirectorySector
+	 *            The first of the {@link Dos2FileSystem#DIRECTORY_SECTORS} consecutive
+	 *            directory sectors.
+	 * @param path
+	 *            The path of the directory, empty for the main directory, not
+	 *            <code>null</code>.
+	 */
+	private static void verifyDirectory(Verification verification, int firstDirectorySector, String path)
+			throws AtrException {
+		int entryCount = DIRECTORY_SECTORS * DIRECTORY_ENTRIES_PER_SECTOR;
+		for (int fileNumber = 0; fileNumber < entryCount; fileNumber++) {
+			ByteBuffer directorySector = verification.atrFile
+					.getSectorBuffer(firstDirectorySector + fileNumber / DIRECTORY_ENTRIES_PER_SECTOR);
+			int entryOffset = (fileNumber % DIRECTORY_ENTRIES_PER_SECTOR) * DIRECTORY_ENTRY_SIZE;
+			int flags = directorySector.get(entryOffset) & MASK_FF;
+			if (flags == 0) {
+				break;
+			}
+			if ((flags & FLAG_DELETED) != 0 || (flags & (FLAG_IN_USE | FLAG_SUBDIRECTORY)) == 0) {
+				continue;
+			}
+			String dosFileName = path + getDosFileName(directorySector, entryOffset);
+			int sectorCountInEntry = getWord(directorySector, entryOffset + ENTRY_SECTOR_COUNT_OFFSET);
+			int startSector = getWord(directorySector, entryOffset + ENTRY_START_SECTOR_OFFSET);
+			verification.ownerNames.add(dosFileName);
+			int owner = verification.ownerNames.size();
+			int count = verifyChain(verification, fileNumber, owner, flags, startSector, sectorCountInEntry);
+			verification.usedSectorCount += count;
+			if ((flags & FLAG_SUBDIRECTORY) == 0) {
+				verification.fileCount++;
+			} else if (count == DIRECTORY_SECTORS) {
+				// The sectors of the sub-directory have not been visited before,
+				// so the recursion terminates.
+				String directoryName = (dosFileName.endsWith(".")
+						? dosFileName.substring(0, dosFileName.length() - 1)
+						: dosFileName);
+				verifyDirectory(verification, startSector, directoryName + AtrFile.PATH_SEPARATOR);
+			}
+		}
+	}
+
+	/**
+	 * Walks the sector chain of a file.
+	 * 
+	 * @param fileNumber
+	 *            The number of the entry in its directory, which is stored in
+	 *            the link bytes of DOS 2 sectors.
+	 * @param owner
+	 *            The owner of the sectors of the file.
+	 * @return The number of sectors in the chain.
+	 */
+	private static int verifyChain(Verification verification, int fileNumber, int owner, int flags,
+			int startSector, int sectorCountInEntry) throws AtrException {
+		AtrFile atrFile = verification.atrFile;
+		int[] owners = verification.owners;
+		List<Problem> problems = verification.problems;
+		String dosFileName = verification.ownerNames.get(owner - 1);
+		int sectorCount = atrFile.getSectorCount();
+		int count = 0;
+
+		// A MyDOS sub-directory consists of 8 consecutive directory sectors.
+		boolean subdirectory = (flags & FLAG_SUBDIRECTORY) != 0;
+		boolean fileNumberMismatch = false;
+		int sectorNumber = startSector;
+		while (sectorNumber != 0) {
+			if (sectorNumber < 0 || sectorNumber > sectorCount) {
+				problems.add(new Problem(ProblemType.INVALID_LINK, dosFileName, sectorNumber,
+						"File '" + dosFileName + "' links to sector " + sectorNumber + " outside of the disk."));
+				break;
+			}
+			int sectorOwner = owners[sectorNumber];
+			if (sectorOwner == owner) {
+				problems.add(new Problem(ProblemType.CYCLE, dosFileName, sectorNumber,
+						"File '" + dosFileName + "' links back to its sector " + sectorNumber + "."));
+				break;
+			}
+			if (sectorOwner != 0 || (subdirectory && getBit(verification.usedBits, sectorNumber))) {
+				String otherName = (sectorOwner != 0 ? "file '" + verification.ownerNames.get(sectorOwner - 1)
+						+ "'" : "the DOS");
+				problems.add(new Problem(ProblemType.CROSS_LINK, dosFileName, sectorNumber,
+						"File '" + dosFileName + "' links to sector " + sectorNumber + " of " + otherName + "."));
+				break;
+			}
+			owners[sectorNumber] = owner;
+			setBit(verification.usedBits, sectorNumber);
+			count++;
+
+			if (subdirectory) {
+				sectorNumber = (count < DIRECTORY_SECTORS ? sectorNumber + 1 : 0);
+				continue;
+			}
+			ByteBuffer sector = atrFile.getSectorBuffer(sectorNumber);
+			int size = sector.limit();
+			int bytesUsed = sector.get(size - 1) & MASK_FF;
+			if (bytesUsed > size - LINK_SIZE) {
+				problems.add(new Problem(ProblemType.INVALID_BYTE_COUNT, dosFileName, sectorNumber,
+						"Sector " + sectorNumber + " of file '" + dosFileName + "' has an invalid byte count of "
+								+ bytesUsed + "."));
+			}
+			int linkHigh = sector.get(size - 3) & MASK_FF;
+			int linkLow = sector.get(size - 2) & MASK_FF;
+			if ((flags & FLAG_MYDOS_LINKS) != 0) {
+				sectorNumber = linkLow | linkHigh << 8;
+			} else {
+				if ((linkHigh >>> 2) != fileNumber && !fileNumberMismatch) {
+					fileNumberMismatch = true;
+					problems.add(new Problem(ProblemType.FILE_NUMBER_MISMATCH, dosFileName, sectorNumber,
+							"Sector " + sectorNumber + " of file '" + dosFileName + "' has file number "
+									+ (linkHigh >>> 2) + " instead of " + fileNumber + "."));
+				}
+				sectorNumber = linkLow | (linkHigh & 0x03) << 8;
+			}
+		}
+		if (count != sectorCountInEntry) {
+			problems.add(new Problem(ProblemType.SECTOR_COUNT_MISMATCH, dosFileName, 0,
+					"File '" + dosFileName + "' has " + count + " sectors but the directory entry specifies "
+							+ sectorCountInEntry + "."));
+		}
+		return count;
+	}
+
+	/**
+	 * Compares the used sectors with the VTOC bitmap 64 sectors at a time.
+	 */
+	private static void verifyVtoc(AtrVtoc vtoc, long[] usedBits, List<Problem> problems) {
+		int lastSectorNumber = vtoc.getSectorCount();
+		for (int index = 0; index <= lastSectorNumber >>> 6; index++) {
+			long covered = -1L;
+			if (index == 0) {
+				covered &= ~1L;
+			}
+			if (index == lastSectorNumber >>> 6) {
+				covered &= -1L >>> (63 - (lastSectorNumber & 63));
+			}
+			long free = vtoc.getFreeBits(index);
+			long used = (index < usedBits.length ? usedBits[index] : 0L);
+			long usedButFree = used & free & covered;
+			long lost = ~used & ~free & covered;
+			while (usedButFree != 0) {
+				int sectorNumber = (index << 6) + Long.numberOfTrailingZeros(usedButFree);
+				usedButFree &= usedButFree - 1;
+				problems.add(new Problem(ProblemType.USED_SECTOR_FREE, null, sectorNumber,
+						"Sector " + sectorNumber + " is used but marked as free in the VTOC."));
+			}
+			while (lost != 0) {
+				int sectorNumber = (index << 6) + Long.numberOfTrailingZeros(lost);
+				lost &= lost - 1;
+				problems.add(new Problem(ProblemType.LOST_SECTOR, null, sectorNumber,
+						"Sector " + sectorNumber + " is not used but marked as used in the VTOC."));
+			}
+		}
+		if (vtoc.getStoredFreeSectorCount() != vtoc.getFreeSectorCount()) {
+			problems.add(new Problem(ProblemType.FREE_SECTOR_COUNT_MISMATCH, null, 0,
+					"VTOC specifies " + vtoc.getStoredFreeSectorCount() + " free sectors but the bitmap contains "
+							+ vtoc.getFreeSectorCount() + "."));
+		}
+	}
+
+	private static void setBit(long[] bits, int sectorNumber) {
+		bits[sectorNumber >>> 6] |= 1L << sectorNumber;
+	}
+
+	private static boolean getBit(long[] bits, int sectorNumber) {
+		return (bits[sectorNumber >>> 6] & 1L << sectorNumber) != 0;
+	}
+
+	private static int getWord(ByteBuffer sector, int offset) {
+		return (sector.get(offset) & MASK_FF) | (sector.get(offset + 1) & MASK_FF) << 8;
+	}
+
+	private static String getDosFileName(ByteBuffer sector, int entryOffset) {
+		StringBuilder fileName = new StringBuilder(8);
+		for (int i = 0; i < 8; i++) {
+			fileName.append((char) (sector.get(entryOffset + 5 + i) & MASK_FF));
+		}
+		StringBuilder extension = new StringBuilder(3);
+		for (int i = 0; i < 3; i++) {
+			extension.append((char) (sector.get(entryOffset + 13 + i) & MASK_FF));
+		}
+		return fileName.toString().trim() + "." + extension.toString().trim();
+	}
+}
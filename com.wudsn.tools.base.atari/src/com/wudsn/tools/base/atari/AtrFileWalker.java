@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+
+/**
+ * Bounded parallel walk over the ATR image files in a folder tree, as used by
+ * {@link AtrFileAnalyzer} and {@link AtrFileVerifier}. The images are
+ * processed by a fixed pool of worker threads. The number of images in flight
+ * and the sum of their sizes are bounded, so the folder walk blocks while the
+ * workers are busy.<br/>
+ * Images up to {@link AtrFileAnalyzer#MAX_HEAP_IMAGE_SIZE} bytes should be
+ * opened with {@link #openImage(File)}, so the bound applies to the memory
+ * actually in use. Larger images are mapped into memory. A mapping is only
+ * released when its {@link AtrFile} is garbage collected, so the bound does
+ * not limit the number of live mappings.
+ * 
+ * @author Peter Dell
+ */
+final class AtrFileWalker {
+
+	/**
+	 * Task which processes a single image. The method is called from the
+	 * worker threads, so implementations must be thread safe.
+	 */
+	interface Task {
+
+		/**
+		 * Processes an image.
+		 * 
+		 * @param file
+		 *            The ATR file, not <code>null</code>.
+		 */
+		public void process(File file);
+	}
+
+	private static final String FILE_EXTENSION = ".atr";
+
+	private final String threadNamePrefix;
+	private final int threadCount;
+	private final int maxInFlightKB;
+
+	/**
+	 * Creates a walker.
+	 * 
+	 * @param threadNamePrefix
+	 *            The prefix for the names of the worker threads, not
+	 *            <code>null</code>.
+	 * @param threadCount
+	 *            The number of worker threads, a positive integer.
+	 * @param maxInFlightSize
+	 *            The maximum sum of the sizes in bytes of the images processed
+	 *            at the same time, a positive integer.
+	 */
+	AtrFileWalker(String threadNamePrefix, int threadCount, long maxInFlightSize) {
+		if (threadNamePrefix == null) {
+			throw new IllegalArgumentException("Parameter 'threadNamePrefix' must not be null.");
+		}
+		if (threadCount < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'threadCount' must be positive. Specified value is " + threadCount + ".");
+		}
+		if (maxInFlightSize < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'maxInFlightSize' must be positive. Specified value is " + maxInFlightSize + ".");
+		}
+		this.threadNamePrefix = threadNamePrefix;
+		this.threadCount = threadCount;
+		this.maxInFlightKB = (int) Math.min(Integer.MAX_VALUE, (maxInFlightSize + 1023) / 1024);
+	}
+
+	/**
+	 * Processes all ATR files in a folder and its sub-folders. The method
+	 * returns after all images have been processed.
+	 * 
+	 * @param folder
+	 *            The root folder, not <code>null</code>.
+	 * @param task
+	 *            The task which processes the images, not <code>null</code>.
+	 * @return The number of images processed, a non-negative integer.
+	 * @throws InterruptedException
+	 *             If the calling thread is interrupted while waiting.
+	 */
+	int walk(File folder, final Task task) throws InterruptedException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Parameter 'folder' must not be null.");
+		}
+		if (task == null) {
+			throw new IllegalArgumentException("Parameter 'task' must not be null.");
+		}
+
+		final Semaphore taskPermits = new Semaphore(threadCount * 4);
+		final Semaphore sizePermits = new Semaphore(maxInFlightKB);
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		int count = 0;
+		try {
+			List<File> folders = new ArrayList<File>();
+			folders.add(folder);
+			while (!folders.isEmpty()) {
+				File[] files = folders.remove(folders.size() - 1).listFiles(new FileFilter() {
+
+					@Override
+					public boolean accept(File file) {
+						return file.isDirectory() || file.getName().toLowerCase().endsWith(FILE_EXTENSION);
+					}
+				});
+				if (files == null) {
+					continue;
+				}
+				for (final File file : files) {
+					if (file.isDirectory()) {
+						folders.add(file);
+						continue;
+					}
+					final int sizeKB = (int) Math.min(maxInFlightKB, (file.length() + 1023) / 1024);
+					taskPermits.acquire();
+					sizePermits.acquire(sizeKB);
+					executor.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							try {
+								task.process(file);
+							} finally {
+								sizePermits.release(sizeKB);
+								taskPermits.release();
+							}
+						}
+					});
+					count++;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		return count;
+	}
+
+	/**
+	 * Opens an image. Images up to {@link AtrFileAnalyzer#MAX_HEAP_IMAGE_SIZE}
+	 * bytes are read into the heap, larger images are mapped into memory.
+	 * 
+	 * @param file
+	 *            The ATR file, not <code>null</code>.
+	 * @return The ATR file, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the file cannot be read or contains an invalid ATR.
+	 */
+	static AtrFile openImage(File file) throws AtrException {
+		long length = file.length();
+		if (length > AtrFileAnalyzer.MAX_HEAP_IMAGE_SIZE) {
+			return AtrFile.createInstance(file);
+		}
+		byte[] data = new byte[(int) length];
+		try {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try {
+				randomAccessFile.readFully(data);
+			} finally {
+				randomAccessFile.close();
+			}
+		} catch (IOException ex) {
+			throw new AtrException("Cannot read file '" + file.getAbsolutePath() + "'.", ex);
+		}
+		return AtrFile.createInstance(data);
+	}
+}
@@ -0,0 +1,872 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_ENTRIES_PER_SECTOR;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_ENTRY_SIZE;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_SECTOR;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.DIRECTORY_SECTORS;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.ENTRY_FILE_NAME_OFFSET;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.ENTRY_SECTOR_COUNT_OFFSET;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.ENTRY_START_SECTOR_OFFSET;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.EXTENSION_LENGTH;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FILE_NAME_LENGTH;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_DELETED;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_DOS2;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.FLAG_IN_USE;
+import static com.wudsn.tools.base.atari.Dos2FileSystem.LINK_SIZE;
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DirectoryEntry;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * Mutable model of an ATR image. Sectors which are not modified are read from
+ * an immutable base image, modified sectors are kept as separate pages. Copies
+ * of an image share their pages until one of them modifies a page, so a
+ * prepared template can be copied cheaply for many images. When an image is
+ * saved, only the modified sectors are written.<br/>
+ * Files can be added and deleted on DOS 2.0S, DOS 2.5 and MyDOS disks where all
+ * sectors covered by the VTOC can be addressed by 10 bit sector links, i.e. up
+ * to sector 1023. The free sectors are managed with an {@link AtrVtoc}.
+ * Instances are not thread safe.
+ * 
+ * @author Peter Dell
+ */
+public final class AtrImage {
+
+	// Limits of DOS 2.x and MyDOS compatible disks.
+	private static final int MAXIMUM_FILES = DIRECTORY_SECTORS * DIRECTORY_ENTRIES_PER_SECTOR;
+	private static final int MAXIMUM_SECTOR_NUMBER = 1023;
+
+	// DOS code in the VTOC of DOS 2.x.
+	private static final int VTOC_DOS_CODE = 2;
+
+	private final AtrFile base;
+	private final int sectorSize;
+	private final int sectorCount;
+	private DosVersion dosVersion;
+	private byte[] header;
+	private boolean headerDirty;
+
+	// Pages of the modified sectors, indexed by sector number.
+	private final byte[][] pages;
+
+	// Pages which are shared with a copy and must be copied before writing.
+	private final BitSet sharedPages;
+
+	// Sectors modified since the image was created or last saved.
+	private final BitSet dirtySectors;
+
+	// VTOC read on first use and written through to the VTOC sectors.
+	private AtrVtoc vtoc;
+
+	private AtrImage(AtrFile base, int sectorSize, int sectorCount, DosVersion dosVersion, byte[] header) {
+		this.base = base;
+		this.sectorSize = sectorSize;
+		this.sectorCount = sectorCount;
+		this.dosVersion = dosVersion;
+		this.header = header;
+		pages = new byte[sectorCount + 1][];
+		sharedPages = new BitSet(sectorCount + 1);
+		dirtySectors = new BitSet(sectorCount + 1);
+	}
+
+	/**
+	 * Creates an image which uses an ATR file as base. The ATR file is not
+	 * modified.
+	 * 
+	 * @param base
+	 *            The base ATR file, not <code>null</code>.
+	 * @return The image, not <code>null</code>.
+	 */
+	public static AtrImage createInstance(AtrFile base) {
+		if (base == null) {
+			throw new IllegalArgumentException("Parameter 'base' must not be null.");
+		}
+		return new AtrImage(base, base.getSectorSize(), base.getSectorCount(), base.getDosVersion(),
+				base.getHeader());
+	}
+
+	/**
+	 * Creates an image which uses an ATR file as base. The file is mapped into
+	 * memory read-only. Use {@link #save(FileChannel)} with a channel opened for
+	 * writing to write the modified sectors back to the file.
+	 * 
+	 * @param file
+	 *            The ATR file, not <code>null</code>.
+	 * @return The image, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the file cannot be read or contains an invalid ATR.
+	 */
+	public static AtrImage createInstance(File file) throws AtrException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		return createInstance(AtrFile.createInstance(file));
+	}
+
+	/**
+	 * Creates an empty image where all sectors are 0.
+	 * 
+	 * @param sectorSize
+	 *            The sector size, {@link AtrFile#SECTOR_SIZE_SD} or
+	 *            {@link AtrFile#SECTOR_SIZE_DD}.
+	 * @param sectorCount
+	 *            The sector count, at least {@link AtrFile#BOOT_SECTORS}.
+	 * @return The image, not <code>null</code>.
+	 */
+	public static AtrImage createInstance(int sectorSize, int sectorCount) {
+		if (sectorSize != AtrFile.SECTOR_SIZE_SD && sectorSize != AtrFile.SECTOR_SIZE_DD) {
+			throw new IllegalArgumentException(
+					"Parameter 'sectorSize' must be " + AtrFile.SECTOR_SIZE_SD + " or " + AtrFile.SECTOR_SIZE_DD
+							+ ". Specified value is " + sectorSize + ".");
+		}
+		if (sectorCount < AtrFile.BOOT_SECTORS) {
+			throw new IllegalArgumentException("Parameter 'sectorCount' must be at least " + AtrFile.BOOT_SECTORS
+					+ ". Specified value is " + sectorCount + ".");
+		}
+		int dataSize = AtrFile.BOOT_SECTORS_SIZE_SD + (sectorCount - AtrFile.BOOT_SECTORS) * sectorSize;
+		AtrImage result = new AtrImage(null, sectorSize, sectorCount, DosVersion.UNKNOWN,
+				AtrFile.createHeader(dataSize, sectorSize));
+		result.headerDirty = true;
+		result.dirtySectors.set(1, sectorCount + 1);
+		return result;
+	}
+
+	/**
+	 * Creates a copy of the image. The pages are shared until either image
+	 * modifies them. The dirty sectors of the copy are the same as the dirty
+	 * sectors of this image.
+	 * 
+	 * @return The copy, not <code>null</code>.
+	 */
+	public AtrImage copy() {
+		AtrImage result = new AtrImage(base, sectorSize, sectorCount, dosVersion, header);
+		System.arraycopy(pages, 0, result.pages, 0, pages.length);
+		for (int sectorNumber = 1; sectorNumber <= sectorCount; sectorNumber++) {
+			if (pages[sectorNumber] != null) {
+				sharedPages.set(sectorNumber);
+			}
+		}
+		result.sharedPages.or(sharedPages);
+		result.dirtySectors.or(dirtySectors);
+		result.headerDirty = headerDirty;
+		return result;
+	}
+
+	public int getSectorSize() {
+		return sectorSize;
+	}
+
+	public int getSectorCount() {
+		return sectorCount;
+	}
+
+	/**
+	 * Gets the DOS version of the base image or {@link DosVersion#ATARI_DOS_20S}
+	 * if the image has been formatted.
+	 * 
+	 * @return The DOS version, not <code>null</code>.
+	 */
+	public DosVersion getDosVersion() {
+		return dosVersion;
+	}
+
+	/**
+	 * Gets the size of a sector in bytes.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @return The size of a sector in bytes, a positive integer.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public int getSectorSize(int sectorNumber) throws AtrException {
+		checkSectorNumber(sectorNumber);
+		return sectorNumber <= AtrFile.BOOT_SECTORS ? AtrFile.SECTOR_SIZE_SD : sectorSize;
+	}
+
+	/**
+	 * Gets a read-only view of a sector. The content is not copied.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @return The read-only buffer with position 0 and the sector size as limit,
+	 *         not <code>null</code>. It reflects later modifications of the
+	 *         sector only if the sector had been modified before.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public ByteBuffer getSectorBuffer(int sectorNumber) throws AtrException {
+		int size = getSectorSize(sectorNumber);
+		byte[] page = pages[sectorNumber];
+		if (page != null) {
+			return ByteBuffer.wrap(page).asReadOnlyBuffer();
+		}
+		if (base != null) {
+			return base.getSectorBuffer(sectorNumber);
+		}
+		return ByteBuffer.allocate(size).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the content of a sector into a buffer supplied by the caller.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @param buffer
+	 *            The buffer, not <code>null</code>. It must have room for
+	 *            {@link #getSectorSize(int)} bytes starting at the offset.
+	 * @param offset
+	 *            The offset in the buffer, a non-negative integer.
+	 * @return The number of bytes copied, i.e. the size of the sector.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public int getSector(int sectorNumber, byte[] buffer, int offset) throws AtrException {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException(
+					"Parameter 'offset' must not be negative. Specified value is " + offset + ".");
+		}
+		int size = getSectorSize(sectorNumber);
+		if (offset + size > buffer.length) {
+			throw new IllegalArgumentException("Parameter 'buffer' has length " + buffer.length
+					+ " which is too small for " + size + " bytes at offset " + offset + ".");
+		}
+		getSectorBuffer(sectorNumber).get(buffer, offset, size);
+		return size;
+	}
+
+	/**
+	 * Writes the content of a sector.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @param buffer
+	 *            The buffer, not <code>null</code>. It must contain
+	 *            {@link #getSectorSize(int)} bytes starting at the offset.
+	 * @param offset
+	 *            The offset in the buffer, a non-negative integer.
+	 * @throws AtrException
+	 *             If the sector number is invalid.
+	 */
+	public void setSector(int sectorNumber, byte[] buffer, int offset) throws AtrException {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException(
+					"Parameter 'offset' must not be negative. Specified value is " + offset + ".");
+		}
+		int size = getSectorSize(sectorNumber);
+		if (offset + size > buffer.length) {
+			throw new IllegalArgumentException("Parameter 'buffer' has length " + buffer.length
+					+ " which is too small for " + size + " bytes at offset " + offset + ".");
+		}
+		System.arraycopy(buffer, offset, getWritablePage(sectorNumber), 0, size);
+	}
+
+	/**
+	 * Gets the page of a sector for modification. The page is created or copied
+	 * if required and the sector is marked as dirty.
+	 * 
+	 * @param sectorNumber
+	 *            The valid sector number, a positive integer.
+	 * @return The page, not <code>null</code>.
+	 */
+	private byte[] getWritablePage(int sectorNumber) throws AtrException {
+		byte[] page = pages[sectorNumber];
+		if (page == null) {
+			page = new byte[getSectorSize(sectorNumber)];
+			if (base != null) {
+				base.getSector(sectorNumber, page, 0);
+			}
+			pages[sectorNumber] = page;
+		} else if (sharedPages.get(sectorNumber)) {
+			page = page.clone();
+			pages[sectorNumber] = page;
+			sharedPages.clear(sectorNumber);
+		}
+		dirtySectors.set(sectorNumber);
+		return page;
+	}
+
+	/**
+	 * Reads the directory entries of all directory sectors without creating
+	 * pages. Each directory sector is read once, so a scan of the directory
+	 * can access the entries directly.
+	 * 
+	 * @return The directory entries, {@link Dos2FileSystem#DIRECTORY_ENTRY_SIZE} bytes per
+	 *         file number, not <code>null</code>. Entries in sectors beyond the
+	 *         last sector are 0.
+	 */
+	private byte[] readDirectory() throws AtrException {
+		int sectorsInImage = Math.max(0, Math.min(DIRECTORY_SECTORS, sectorCount - DIRECTORY_SECTOR + 1));
+		byte[] result;
+		if (base != null && sectorsInImage > 0) {
+			result = base.getSectors(DIRECTORY_SECTOR, DIRECTORY_SECTOR + sectorsInImage - 1,
+					AtrFile.SECTOR_SIZE_SD);
+			if (sectorsInImage < DIRECTORY_SECTORS) {
+				byte[] directory = new byte[DIRECTORY_SECTORS * AtrFile.SECTOR_SIZE_SD];
+				System.arraycopy(result, 0, directory, 0, result.length);
+				result = directory;
+			}
+		} else {
+			result = new byte[DIRECTORY_SECTORS * AtrFile.SECTOR_SIZE_SD];
+		}
+		for (int i = 0; i < sectorsInImage; i++) {
+			byte[] page = pages[DIRECTORY_SECTOR + i];
+			if (page != null) {
+				System.arraycopy(page, 0, result, i * AtrFile.SECTOR_SIZE_SD, AtrFile.SECTOR_SIZE_SD);
+			}
+		}
+		return result;
+	}
+
+	private void setWord(byte[] page, int offset, int value) {
+		page[offset] = (byte) value;
+		page[offset + 1] = (byte) (value >>> 8);
+	}
+
+	/**
+	 * Determines if the image has sectors which have been modified since it was
+	 * created or saved.
+	 * 
+	 * @return <code>true</code> if there are modified sectors.
+	 */
+	public boolean isDirty() {
+		return headerDirty || !dirtySectors.isEmpty();
+	}
+
+	/**
+	 * Gets the number of sectors which have been modified since the image was
+	 * created or saved.
+	 * 
+	 * @return The number of sectors, a non-negative integer.
+	 */
+	public int getDirtySectorCount() {
+		return dirtySectors.cardinality();
+	}
+
+	/**
+	 * Formats the image with empty boot sectors, an empty DOS 2.x directory and a
+	 * VTOC where all sectors except the boot, VTOC and directory sectors are
+	 * free. Like in DOS 2.x, the last sector is not used.
+	 * 
+	 * @throws AtrException
+	 *             If the image is too small or too large for the DOS 2.x layout.
+	 */
+	public void format() throws AtrException {
+		if (sectorCount <= DIRECTORY_SECTOR + DIRECTORY_SECTORS || sectorCount > MAXIMUM_SECTOR_NUMBER) {
+			throw new AtrException("Sector count " + sectorCount + " is not supported for DOS 2.x format.");
+		}
+		AtrVtoc newVtoc = AtrVtoc.createInstance(DosVersion.ATARI_DOS_20S, sectorCount, sectorSize);
+		newVtoc.setSectorsFree(AtrFile.BOOT_SECTORS + 1, AtrVtoc.VTOC_SECTOR - 1, true);
+		newVtoc.setSectorsFree(DIRECTORY_SECTOR + DIRECTORY_SECTORS, sectorCount - 1, true);
+
+		byte[] emptySector = new byte[sectorSize];
+		for (int sectorNumber = 1; sectorNumber <= sectorCount; sectorNumber++) {
+			if (pages[sectorNumber] != null || base != null) {
+				System.arraycopy(emptySector, 0, getWritablePage(sectorNumber), 0, getSectorSize(sectorNumber));
+			}
+		}
+		byte[] bootSectors = AtrFile.createBootSectors();
+		for (int sectorNumber = 1; sectorNumber <= AtrFile.BOOT_SECTORS; sectorNumber++) {
+			setSector(sectorNumber, bootSectors, (sectorNumber - 1) * AtrFile.SECTOR_SIZE_SD);
+		}
+
+		byte[] page = getWritablePage(AtrVtoc.VTOC_SECTOR);
+		page[AtrVtoc.DOS_CODE_OFFSET] = VTOC_DOS_CODE;
+		setWord(page, AtrVtoc.TOTAL_SECTORS_OFFSET, newVtoc.getFreeSectorCount());
+		dosVersion = DosVersion.ATARI_DOS_20S;
+		vtoc = newVtoc;
+		writeVtoc();
+	}
+
+	/**
+	 * Gets a copy of the VTOC.
+	 * 
+	 * @return The VTOC, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the image has no supported VTOC.
+	 */
+	public AtrVtoc getVtoc() throws AtrException {
+		return new AtrVtoc(getCachedVtoc());
+	}
+
+	/**
+	 * Gets the number of free sectors from the VTOC.
+	 * 
+	 * @return The number of free sectors, a non-negative integer.
+	 * @throws AtrException
+	 *             If the image has no supported VTOC.
+	 */
+	public int getFreeSectorCount() throws AtrException {
+		return getCachedVtoc().getFreeSectorCount();
+	}
+
+	/**
+	 * Determines if a sector is marked as free in the VTOC.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @return <code>true</code> if the sector is free.
+	 * @throws AtrException
+	 *             If the image has no supported VTOC or the sector number is
+	 *             invalid.
+	 */
+	public boolean isSectorFree(int sectorNumber) throws AtrException {
+		checkSectorNumber(sectorNumber);
+		return getCachedVtoc().isSectorFree(sectorNumber);
+	}
+
+	private AtrVtoc getCachedVtoc() throws AtrException {
+		checkWritable();
+		if (vtoc == null) {
+			AtrVtoc result = AtrVtoc.createInstance(dosVersion, sectorCount, sectorSize);
+			int[] vtocSectorNumbers = result.getVtocSectorNumbers();
+			for (int i = 0; i < vtocSectorNumbers.length; i++) {
+				result.readSector(i, getSectorBuffer(vtocSectorNumbers[i]));
+			}
+			if (result.getSectorCount() > MAXIMUM_SECTOR_NUMBER) {
+				throw new AtrException("Cannot modify files on disks with " + result.getSectorCount()
+						+ " sectors in the VTOC.");
+			}
+			vtoc = result;
+		}
+		return vtoc;
+	}
+
+	/**
+	 * Writes the bitmap and the free sector count of the VTOC to the VTOC
+	 * sectors.
+	 */
+	private void writeVtoc() throws AtrException {
+		int[] vtocSectorNumbers = vtoc.getVtocSectorNumbers();
+		for (int i = 0; i < vtocSectorNumbers.length; i++) {
+			vtoc.writeSector(i, getWritablePage(vtocSectorNumbers[i]));
+		}
+	}
+
+	/**
+	 * Gets the directory entries of the disk.
+	 * 
+	 * @return The modifiable list of directory entries, may be empty, not
+	 *         <code>null</code>.
+	 * @throws AtrException
+	 *             If the image has no supported directory.
+	 */
+	public List<DirectoryEntry> getDirectory() throws AtrException {
+		checkWritable();
+		byte[] directory = readDirectory();
+		List<DirectoryEntry> result = new ArrayList<DirectoryEntry>();
+		for (int fileNumber = 0; fileNumber < MAXIMUM_FILES; fileNumber++) {
+			int flags = getEntryByte(directory, fileNumber, 0);
+			if (flags == 0) {
+				break;
+			}
+			if ((flags & FLAG_DELETED) == 0 && (flags & FLAG_IN_USE) != 0) {
+				String directoryFileName = getDirectoryFileName(directory, fileNumber);
+				result.add(new DirectoryEntry(directoryFileName, getDosFileName(directoryFileName),
+						getEntryWord(directory, fileNumber, ENTRY_START_SECTOR_OFFSET)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the binary content of a file.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The binary content of the file or <code>null</code> if the file
+	 *         does not exist.
+	 * @throws AtrException
+	 *             If the image has no supported directory or the sector chain is
+	 *             invalid.
+	 */
+	public byte[] getFileContent(String fileName) throws AtrException {
+		if (fileName == null) {
+			throw new IllegalArgumentException("Parameter 'fileName' must not be null.");
+		}
+		checkWritable();
+		byte[] directory = readDirectory();
+		int fileNumber = getFileNumber(directory, fileName);
+		if (fileNumber < 0) {
+			return null;
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] sector = new byte[sectorSize];
+		int sectorNumber = getEntryWord(directory, fileNumber, ENTRY_START_SECTOR_OFFSET);
+		for (int count = 0; sectorNumber != 0; count++) {
+			if (count >= sectorCount) {
+				throw new AtrException("Sector chain of file '" + fileName + "' contains a cycle.");
+			}
+			int size = getSector(sectorNumber, sector, 0);
+			int bytesUsed = sector[size - 1] & MASK_FF;
+			if (bytesUsed > size - LINK_SIZE) {
+				throw new AtrException(
+						"Sector " + sectorNumber + " has an invalid byte count of " + bytesUsed + ".");
+			}
+			bos.write(sector, 0, bytesUsed);
+			sectorNumber = getNextSectorNumber(sector, size);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Adds a file. The sectors with the lowest numbers are allocated.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation with 1 to 8 characters for the
+	 *            name and 0 to 3 characters for the extension, not
+	 *            <code>null</code>. Only letters and digits are allowed and the
+	 *            name must start with a letter. Lower case letters are converted
+	 *            to upper case.
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @return The directory entry of the new file, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the image has no supported directory, if the file already
+	 *             exists, if the directory is full or if there are not enough
+	 *             free sectors.
+	 */
+	public DirectoryEntry addFile(String fileName, byte[] content) throws AtrException {
+		if (fileName == null) {
+			throw new IllegalArgumentException("Parameter 'fileName' must not be null.");
+		}
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		String directoryFileName = getDirectoryFileNameForDosFileName(fileName);
+		if (directoryFileName == null) {
+			throw new IllegalArgumentException("Parameter 'fileName' is no valid DOS file name. Specified value is '"
+					+ fileName + "'.");
+		}
+		String dosFileName = getDosFileName(directoryFileName);
+		checkWritable();
+		byte[] directory = readDirectory();
+		if (getFileNumber(directory, dosFileName) >= 0) {
+			throw new AtrException("File '" + dosFileName + "' already exists.");
+		}
+
+		// Find the first deleted or unused directory entry.
+		int fileNumber = -1;
+		for (int i = 0; i < MAXIMUM_FILES && fileNumber < 0; i++) {
+			int flags = getEntryByte(directory, i, 0);
+			if (flags == 0 || (flags & FLAG_DELETED) != 0) {
+				fileNumber = i;
+			}
+		}
+		if (fileNumber < 0) {
+			throw new AtrException("Directory is full.");
+		}
+
+		// Allocate the sectors, an empty file still has one sector.
+		int dataSize = sectorSize - LINK_SIZE;
+		int sectorsRequired = Math.max(1, (content.length + dataSize - 1) / dataSize);
+		AtrVtoc cachedVtoc = getCachedVtoc();
+		if (sectorsRequired > cachedVtoc.getFreeSectorCount()) {
+			throw new AtrException("File '" + dosFileName + "' requires " + sectorsRequired + " sectors but only "
+					+ cachedVtoc.getFreeSectorCount() + " sectors are free.");
+		}
+		int[] sectorNumbers = cachedVtoc.allocate(sectorsRequired);
+		writeVtoc();
+
+		// Write the data sectors.
+		int offset = 0;
+		for (int i = 0; i < sectorsRequired; i++) {
+			int sectorNumber = sectorNumbers[i];
+			int nextSectorNumber = (i + 1 < sectorsRequired ? sectorNumbers[i + 1] : 0);
+			int bytesUsed = Math.min(dataSize, content.length - offset);
+			byte[] page = getWritablePage(sectorNumber);
+			System.arraycopy(content, offset, page, 0, bytesUsed);
+			for (int j = bytesUsed; j < dataSize; j++) {
+				page[j] = 0;
+			}
+			page[sectorSize - 3] = (byte) ((fileNumber << 2) | (nextSectorNumber >>> 8));
+			page[sectorSize - 2] = (byte) nextSectorNumber;
+			page[sectorSize - 1] = (byte) bytesUsed;
+			offset += bytesUsed;
+		}
+
+		// Write the directory entry.
+		byte[] page = getWritablePage(DIRECTORY_SECTOR + fileNumber / DIRECTORY_ENTRIES_PER_SECTOR);
+		int entryOffset = (fileNumber % DIRECTORY_ENTRIES_PER_SECTOR) * DIRECTORY_ENTRY_SIZE;
+		page[entryOffset] = (byte) (FLAG_IN_USE | FLAG_DOS2);
+		setWord(page, entryOffset + ENTRY_SECTOR_COUNT_OFFSET, sectorsRequired);
+		setWord(page, entryOffset + ENTRY_START_SECTOR_OFFSET, sectorNumbers[0]);
+		for (int i = 0; i < FILE_NAME_LENGTH + EXTENSION_LENGTH; i++) {
+			page[entryOffset + ENTRY_FILE_NAME_OFFSET + i] = (byte) directoryFileName.charAt(i);
+		}
+		return new DirectoryEntry(directoryFileName, dosFileName, sectorNumbers[0]);
+	}
+
+	/**
+	 * Deletes a file. The directory entry is marked as deleted and the sectors
+	 * of the file are marked as free in the VTOC. The content of the sectors is
+	 * not modified.
+	 * 
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return <code>true</code> if the file was deleted, <code>false</code> if
+	 *         it does not exist.
+	 * @throws AtrException
+	 *             If the image has no supported directory or the sector chain is
+	 *             invalid.
+	 */
+	public boolean deleteFile(String fileName) throws AtrException {
+		if (fileName == null) {
+			throw new IllegalArgumentException("Parameter 'fileName' must not be null.");
+		}
+		checkWritable();
+		byte[] directory = readDirectory();
+		int fileNumber = getFileNumber(directory, fileName);
+		if (fileNumber < 0) {
+			return false;
+		}
+		AtrVtoc cachedVtoc = getCachedVtoc();
+		byte[] sector = new byte[sectorSize];
+		int sectorNumber = getEntryWord(directory, fileNumber, ENTRY_START_SECTOR_OFFSET);
+		for (int count = 0; sectorNumber != 0; count++) {
+			if (count >= sectorCount) {
+				throw new AtrException("Sector chain of file '" + fileName + "' contains a cycle.");
+			}
+			int size = getSector(sectorNumber, sector, 0);
+			cachedVtoc.setSectorFree(sectorNumber, true);
+			sectorNumber = getNextSectorNumber(sector, size);
+		}
+		writeVtoc();
+		byte[] page = getWritablePage(DIRECTORY_SECTOR + fileNumber / DIRECTORY_ENTRIES_PER_SECTOR);
+		page[(fileNumber % DIRECTORY_ENTRIES_PER_SECTOR) * DIRECTORY_ENTRY_SIZE] = (byte) FLAG_DELETED;
+		return true;
+	}
+
+	/**
+	 * Writes the header if it is new and all modified sectors to a file channel.
+	 * The dirty state is reset afterwards. The position of the channel is not
+	 * modified.
+	 * 
+	 * @param channel
+	 *            The file channel opened for writing, not <code>null</code>. It
+	 *            must contain the base image or be empty if the image has no
+	 *            base.
+	 * @return The number of sectors written, a non-negative integer.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public int save(FileChannel channel) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+		if (headerDirty) {
+			writeFully(channel, ByteBuffer.wrap(header), 0);
+		}
+		int count = 0;
+		for (int sectorNumber = dirtySectors.nextSetBit(1); sectorNumber >= 0; sectorNumber = dirtySectors
+				.nextSetBit(sectorNumber + 1)) {
+			ByteBuffer buffer;
+			try {
+				buffer = getSectorBuffer(sectorNumber);
+			} catch (AtrException ex) {
+				throw new IOException(ex.getMessage(), ex);
+			}
+			writeFully(channel, buffer, getSectorStartOffset(sectorNumber));
+			count++;
+		}
+		headerDirty = false;
+		dirtySectors.clear();
+		return count;
+	}
+
+	/**
+	 * Gets the complete content of the image as ATR file.
+	 * 
+	 * @return The content including the ATR header, not <code>null</code>.
+	 */
+	public byte[] toByteArray() {
+		byte[] result = new byte[getSectorStartOffset(sectorCount) + (sectorCount <= AtrFile.BOOT_SECTORS
+				? AtrFile.SECTOR_SIZE_SD : sectorSize)];
+		System.arraycopy(header, 0, result, 0, AtrFile.HEADER_SIZE);
+		for (int sectorNumber = 1; sectorNumber <= sectorCount; sectorNumber++) {
+			try {
+				getSector(sectorNumber, result, getSectorStartOffset(sectorNumber));
+			} catch (AtrException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		return result;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private int getSectorStartOffset(int sectorNumber) {
+		if (sectorNumber <= AtrFile.BOOT_SECTORS) {
+			return AtrFile.HEADER_SIZE + (sectorNumber - 1) * AtrFile.SECTOR_SIZE_SD;
+		}
+		return AtrFile.HEADER_SIZE + AtrFile.BOOT_SECTORS_SIZE_SD
+				+ (sectorNumber - 1 - AtrFile.BOOT_SECTORS) * sectorSize;
+	}
+
+	private void checkSectorNumber(int sectorNumber) throws AtrException {
+		if (sectorNumber <= 0) {
+			throw new AtrException(
+					"Parameter 'sectorNumber' must be positive. Specified value is " + sectorNumber + ".");
+		}
+		if (sectorNumber > sectorCount) {
+			throw new AtrException("Parameter 'sectorNumber' must be less than the maximum sector " + sectorCount
+					+ ". Specified value is " + sectorNumber + ".");
+		}
+	}
+
+	private void checkWritable() throws AtrException {
+		switch (dosVersion) {
+		case ATARI_DOS_20S:
+		case ATARI_DOS_25:
+		case MYDOS:
+			break;
+		default:
+			throw new AtrException("Cannot modify files for unknown or unsupported DOS version " + dosVersion + ".");
+		}
+	}
+
+	private static int getEntryByte(byte[] directory, int fileNumber, int offset) {
+		return directory[fileNumber * DIRECTORY_ENTRY_SIZE + offset] & MASK_FF;
+	}
+
+	private static int getEntryWord(byte[] directory, int fileNumber, int offset) {
+		return getEntryByte(directory, fileNumber, offset) | getEntryByte(directory, fileNumber, offset + 1) << 8;
+	}
+
+	private static String getDirectoryFileName(byte[] directory, int fileNumber) {
+		StringBuilder builder = new StringBuilder(FILE_NAME_LENGTH + EXTENSION_LENGTH);
+		for (int i = 0; i < FILE_NAME_LENGTH + EXTENSION_LENGTH; i++) {
+			builder.append((char) getEntryByte(directory, fileNumber, ENTRY_FILE_NAME_OFFSET + i));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Gets the file number of a file, which is the index of its directory
+	 * entry.
+	 * 
+	 * @param directory
+	 *            The directory entries read with {@link #readDirectory()}, not
+	 *            <code>null</code>.
+	 * @param fileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The file number or -1 if the file does not exist.
+	 */
+	private static int getFileNumber(byte[] directory, String fileName) {
+		for (int fileNumber = 0; fileNumber < MAXIMUM_FILES; fileNumber++) {
+			int flags = getEntryByte(directory, fileNumber, 0);
+			if (flags == 0) {
+				break;
+			}
+			if ((flags & FLAG_DELETED) == 0 && (flags & FLAG_IN_USE) != 0
+					&& getDosFileName(getDirectoryFileName(directory, fileNumber)).equals(fileName)) {
+				return fileNumber;
+			}
+		}
+		return -1;
+	}
+
+	private static int getNextSectorNumber(byte[] sector, int size) {
+		return (sector[size - 2] & MASK_FF) | (sector[size - 3] & 0x03) << 8;
+	}
+
+	/**
+	 * Gets the file name in "8.3" notation as used by {@link AtrFile}.
+	 * 
+	 * @param directoryFileName
+	 *            The file name as in the directory, i.e. 11 characters, not
+	 *            <code>null</code>.
+	 * @return The file name in "8.3" notation, not <code>null</code>.
+	 */
+	private static String getDosFileName(String directoryFileName) {
+		return directoryFileName.substring(0, FILE_NAME_LENGTH).trim() + "."
+				+ directoryFileName.substring(FILE_NAME_LENGTH).trim();
+	}
+
+	/**
+	 * Gets the file name as in the directory.
+	 * 
+	 * @param dosFileName
+	 *            The file name in "8.3" notation, not <code>null</code>.
+	 * @return The file name with 11 characters padded with spaces or
+	 *         <code>null</code> if the file name is not valid.
+	 */
+	private static String getDirectoryFileNameForDosFileName(String dosFileName) {
+		String upperCaseFileName = dosFileName.toUpperCase();
+		int index = upperCaseFileName.indexOf('.');
+		String fileName = index < 0 ? upperCaseFileName : upperCaseFileName.substring(0, index);
+		String extension = index < 0 ? "" : upperCaseFileName.substring(index + 1);
+		if (fileName.length() < 1 || fileName.length() > FILE_NAME_LENGTH || extension.length() > EXTENSION_LENGTH
+				|| !isValidFileNamePart(fileName) || !isValidFileNamePart(extension)
+				|| !Character.isLetter(fileName.charAt(0))) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder(FILE_NAME_LENGTH + EXTENSION_LENGTH);
+		builder.append(fileName);
+		while (builder.length() < FILE_NAME_LENGTH) {
+			builder.append(' ');
+		}
+		builder.append(extension);
+		while (builder.length() < FILE_NAME_LENGTH + EXTENSION_LENGTH) {
+			builder.append(' ');
+		}
+		return builder.toString();
+	}
+
+	private static boolean isValidFileNamePart(String part) {
+		for (int i = 0; i < part.length(); i++) {
+			char c = part.charAt(i);
+			if (!((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "sectorSize=" + sectorSize + ", sectorCount=" + sectorCount + ", DOS=" + dosVersion
+				+ ", dirtySectors=" + dirtySectors.cardinality();
+	}
+}
@@ -0,0 +1,602 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import java.nio.ByteBuffer;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * Parsed volume table of contents (VTOC) of a DOS 2.0S, DOS 2.5 or MyDOS disk.
+ * The free sectors are kept as bitmap in an array of longs, so counting,
+ * searching and allocating processes 64 sectors at a time.<br/>
+ * DOS 2.0S and MyDOS keep the bitmap starting at offset 10 of sector 360. DOS
+ * 2.0S does not use the last sector of the disk. MyDOS continues the bitmap in
+ * the sectors 359, 358 and below if the disk is larger.
+ * DOS 2.5 keeps the bitmap for the sectors up to 719 in sector 360 and the
+ * bitmap for the sectors 48 to 1023 in sector 1024. SpartaDOS and RealDOS keep
+ * the bitmap in consecutive sectors starting with the bit for sector 0 as
+ * specified in the boot sector. Instances are not thread safe.
+ * 
+ * @author Peter Dell
+ */
+public final class AtrVtoc {
+
+	// Sector numbers of the VTOC.
+	static final int VTOC_SECTOR = 360;
+	private static final int DOS_25_VTOC2_SECTOR = 1024;
+
+	// Fields of the first VTOC sector.
+	static final int DOS_CODE_OFFSET = 0;
+	static final int TOTAL_SECTORS_OFFSET = 1;
+	static final int FREE_SECTORS_OFFSET = 3;
+	private static final int BITMAP_OFFSET = 10;
+
+	// Fields of the second VTOC sector of DOS 2.5, which starts with the bitmap
+	// for sector 48.
+	private static final int DOS_25_VTOC2_FIRST_SECTOR = 48;
+	private static final int DOS_25_VTOC2_FREE_SECTORS_OFFSET = 122;
+	private static final int DOS_25_VTOC1_SECTOR_COUNT = 720;
+
+	private final DosVersion dosVersion;
+	private final int sectorCount;
+
+	// Number of the VTOC sectors and the part of the bitmap they contain.
+	private final int[] vtocSectorNumbers;
+	private final int[] bitmapOffsets;
+	private final int[] firstSectorNumbers;
+	private final int[] lastSectorNumbers;
+
+	// One bit per sector, set if the sector is free.
+	private final long[] bits;
+	private int freeSectorCount;
+
+	// Free sector count as stored in the VTOC sectors.
+	private int storedFreeSectorCount;
+
+	private AtrVtoc(DosVersion dosVersion, int sectorCount, int[] vtocSectorNumbers, int[] bitmapOffsets,
+			int[] firstSectorNumbers, int[] lastSectorNumbers) {
+		this.dosVersion = dosVersion;
+		this.sectorCount = sectorCount;
+		this.vtocSectorNumbers = vtocSectorNumbers;
+		this.bitmapOffsets = bitmapOffsets;
+		this.firstSectorNumbers = firstSectorNumbers;
+		this.lastSectorNumbers = lastSectorNumbers;
+		bits = new long[(sectorCount >>> 6) + 1];
+	}
+
+	/**
+	 * Creates a copy of a VTOC.
+	 * 
+	 * @param vtoc
+	 *            The VTOC, not <code>null</code>.
+	 */
+	public AtrVtoc(AtrVtoc vtoc) {
+		if (vtoc == null) {
+			throw new IllegalArgumentException("Parameter 'vtoc' must not be null.");
+		}
+		dosVersion = vtoc.dosVersion;
+		sectorCount = vtoc.sectorCount;
+		vtocSectorNumbers = vtoc.vtocSectorNumbers;
+		bitmapOffsets = vtoc.bitmapOffsets;
+		firstSectorNumbers = vtoc.firstSectorNumbers;
+		lastSectorNumbers = vtoc.lastSectorNumbers;
+		bits = vtoc.bits.clone();
+		freeSectorCount = vtoc.freeSectorCount;
+		storedFreeSectorCount = vtoc.storedFreeSectorCount;
+	}
+
+	/**
+	 * Creates a VTOC where all sectors are used. The layout of the VTOC sectors
+	 * is determined by the DOS version and the disk geometry.
+	 * 
+	 * @param dosVersion
+	 *            The DOS version, {@link DosVersion#ATARI_DOS_20S},
+	 *            {@link DosVersion#ATARI_DOS_25} or {@link DosVersion#MYDOS}.
+	 * @param sectorCount
+	 *            The sector count of the disk, a positive integer.
+	 * @param sectorSize
+	 *            The sector size of the disk, a positive integer.
+	 * @return The VTOC, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the DOS version or the disk geometry are not supported.
+	 */
+	static AtrVtoc createInstance(DosVersion dosVersion, int sectorCount, int sectorSize) throws AtrException {
+		if (dosVersion == null) {
+			throw new IllegalArgumentException("Parameter 'dosVersion' must not be null.");
+		}
+		if (sectorCount < VTOC_SECTOR) {
+			throw new AtrException("Disk with " + sectorCount + " sectors has no VTOC.");
+		}
+		switch (dosVersion) {
+		case ATARI_DOS_25:
+			if (sectorCount >= DOS_25_VTOC2_SECTOR) {
+				int lastSectorNumber = DOS_25_VTOC2_SECTOR - 1;
+				return new AtrVtoc(dosVersion, lastSectorNumber, new int[] { VTOC_SECTOR, DOS_25_VTOC2_SECTOR },
+						new int[] { BITMAP_OFFSET, (DOS_25_VTOC1_SECTOR_COUNT - DOS_25_VTOC2_FIRST_SECTOR) >>> 3 },
+						new int[] { 0, DOS_25_VTOC1_SECTOR_COUNT },
+						new int[] { DOS_25_VTOC1_SECTOR_COUNT - 1, lastSectorNumber });
+			}
+			//$FALL-THROUGH$
+		case ATARI_DOS_20S:
+			sectorCount--;
+			//$FALL-THROUGH$
+		case MYDOS:
+			// The bitmap continues in the sectors below the first VTOC sector.
+			int bitmapSize = (sectorCount >>> 3) + 1;
+			int firstSize = sectorSize - BITMAP_OFFSET;
+			int count = 1 + Math.max(0, (bitmapSize - firstSize + sectorSize - 1) / sectorSize);
+			if (count > 1 && dosVersion != DosVersion.MYDOS) {
+				throw new AtrException(
+						"VTOC of " + dosVersion + " for " + sectorCount + " sectors does not fit into one sector.");
+			}
+			int[] vtocSectorNumbers = new int[count];
+			int[] bitmapOffsets = new int[count];
+			int[] firstSectorNumbers = new int[count];
+			int[] lastSectorNumbers = new int[count];
+			int firstSectorNumber = 0;
+			for (int i = 0; i < count; i++) {
+				int size = (i == 0 ? firstSize : sectorSize);
+				vtocSectorNumbers[i] = VTOC_SECTOR - i;
+				bitmapOffsets[i] = (i == 0 ? BITMAP_OFFSET : 0);
+				firstSectorNumbers[i] = firstSectorNumber;
+				lastSectorNumbers[i] = Math.min(sectorCount, firstSectorNumber + size * 8 - 1);
+				firstSectorNumber += size * 8;
+			}
+			return new AtrVtoc(dosVersion, sectorCount, vtocSectorNumbers, bitmapOffsets, firstSectorNumbers,
+					lastSectorNumbers);
+
+		default:
+			throw new AtrException("Cannot read VTOC of unknown or unsupported DOS version " + dosVersion + ".");
+		}
+	}
+
+	/**
+	 * Creates a bitmap of SpartaDOS or RealDOS where all sectors are used.
+	 * 
+	 * @param dosVersion
+	 *            The DOS version, {@link DosVersion#SPARTADOS} or
+	 *            {@link DosVersion#REALDOS}.
+	 * @param sectorCount
+	 *            The sector count of the disk, a positive integer.
+	 * @param sectorSize
+	 *            The sector size of the disk, a positive integer.
+	 * @param firstBitmapSector
+	 *            The first sector of the bitmap, a positive integer.
+	 * @param bitmapSectorCount
+	 *            The number of sectors of the bitmap, a positive integer.
+	 * @param storedFreeSectorCount
+	 *            The free sector count from the boot sector.
+	 * @return The VTOC, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the bitmap sectors are not on the disk.
+	 */
+	static AtrVtoc createSpartaDosInstance(DosVersion dosVersion, int sectorCount, int sectorSize,
+			int firstBitmapSector, int bitmapSectorCount, int storedFreeSectorCount) throws AtrException {
+		if (dosVersion == null) {
+			throw new IllegalArgumentException("Parameter 'dosVersion' must not be null.");
+		}
+		if (firstBitmapSector <= AtrFile.BOOT_SECTORS || bitmapSectorCount < 1
+				|| firstBitmapSector + bitmapSectorCount - 1 > sectorCount) {
+			throw new AtrException("Bitmap with " + bitmapSectorCount + " sectors starting at sector "
+					+ firstBitmapSector + " is not valid for a disk with " + sectorCount + " sectors.");
+		}
+		int[] vtocSectorNumbers = new int[bitmapSectorCount];
+		int[] bitmapOffsets = new int[bitmapSectorCount];
+		int[] firstSectorNumbers = new int[bitmapSectorCount];
+		int[] lastSectorNumbers = new int[bitmapSectorCount];
+		for (int i = 0; i < bitmapSectorCount; i++) {
+			vtocSectorNumbers[i] = firstBitmapSector + i;
+			firstSectorNumbers[i] = Math.min(sectorCount + 1, i * sectorSize * 8);
+			lastSectorNumbers[i] = Math.min(sectorCount, (i + 1) * sectorSize * 8 - 1);
+		}
+		AtrVtoc result = new AtrVtoc(dosVersion, sectorCount, vtocSectorNumbers, bitmapOffsets, firstSectorNumbers,
+				lastSectorNumbers);
+		result.storedFreeSectorCount = storedFreeSectorCount;
+		return result;
+	}
+
+	/**
+	 * Gets the numbers of the sectors which contain the VTOC.
+	 * 
+	 * @return The array of sector numbers, the first one is always 360, not
+	 *         <code>null</code>. The array must not be modified.
+	 */
+	int[] getVtocSectorNumbers() {
+		return vtocSectorNumbers;
+	}
+
+	/**
+	 * Reads the bitmap part of a VTOC sector.
+	 * 
+	 * @param index
+	 *            The index in {@link #getVtocSectorNumbers()}.
+	 * @param sector
+	 *            The buffer with the sector content starting at index 0, not
+	 *            <code>null</code>.
+	 */
+	void readSector(int index, ByteBuffer sector) {
+		if (sector == null) {
+			throw new IllegalArgumentException("Parameter 'sector' must not be null.");
+		}
+		// For SpartaDOS, the free sector count is stored in the boot sector.
+		if (!isSpartaDos()) {
+			if (index == 0) {
+				storedFreeSectorCount += getWord(sector, FREE_SECTORS_OFFSET);
+			} else if (dosVersion == DosVersion.ATARI_DOS_25) {
+				storedFreeSectorCount += getWord(sector, DOS_25_VTOC2_FREE_SECTORS_OFFSET);
+			}
+		}
+		int offset = bitmapOffsets[index];
+		for (int sectorNumber = firstSectorNumbers[index]; sectorNumber <= lastSectorNumbers[index]; sectorNumber++) {
+			int value = sector.get(offset + ((sectorNumber - firstSectorNumbers[index]) >>> 3)) & MASK_FF;
+			boolean free = (value & (0x80 >>> (sectorNumber & 7))) != 0;
+			if (sectorNumber > 0) {
+				setSectorFreeUnchecked(sectorNumber, free);
+			}
+		}
+	}
+
+	/**
+	 * Writes the bitmap part and the free sector count of a VTOC sector. The other
+	 * bytes of the sector are not modified.
+	 * 
+	 * @param index
+	 *            The index in {@link #getVtocSectorNumbers()}.
+	 * @param sector
+	 *            The sector content, not <code>null</code>.
+	 */
+	void writeSector(int index, byte[] sector) {
+		if (sector == null) {
+			throw new IllegalArgumentException("Parameter 'sector' must not be null.");
+		}
+		writeBitmap(sector, bitmapOffsets[index], firstSectorNumbers[index], lastSectorNumbers[index]);
+		if (dosVersion == DosVersion.ATARI_DOS_25 && vtocSectorNumbers.length > 1) {
+			int freeSectors = getFreeSectorCount(firstSectorNumbers[index], lastSectorNumbers[index]);
+			if (index == 0) {
+				setWord(sector, FREE_SECTORS_OFFSET, freeSectors);
+			} else {
+				// The bitmap of the first VTOC sector is repeated from sector 48
+				// on.
+				writeBitmap(sector, 0, DOS_25_VTOC2_FIRST_SECTOR, firstSectorNumbers[index] - 1);
+				setWord(sector, DOS_25_VTOC2_FREE_SECTORS_OFFSET, freeSectors);
+			}
+		} else if (index == 0 && !isSpartaDos()) {
+			setWord(sector, FREE_SECTORS_OFFSET, freeSectorCount);
+		}
+	}
+
+	private boolean isSpartaDos() {
+		return dosVersion == DosVersion.SPARTADOS || dosVersion == DosVersion.REALDOS;
+	}
+
+	private void writeBitmap(byte[] sector, int offset, int firstSectorNumber, int lastSectorNumber) {
+		for (int sectorNumber = firstSectorNumber; sectorNumber <= lastSectorNumber; sectorNumber++) {
+			int index = offset + ((sectorNumber - firstSectorNumber) >>> 3);
+			int mask = 0x80 >>> (sectorNumber & 7);
+			if (isSectorFreeUnchecked(sectorNumber)) {
+				sector[index] |= mask;
+			} else {
+				sector[index] &= ~mask;
+			}
+		}
+	}
+
+	private static int getWord(ByteBuffer sector, int offset) {
+		return (sector.get(offset) & MASK_FF) | (sector.get(offset + 1) & MASK_FF) << 8;
+	}
+
+	private static void setWord(byte[] sector, int offset, int value) {
+		sector[offset] = (byte) value;
+		sector[offset + 1] = (byte) (value >>> 8);
+	}
+
+	/**
+	 * Gets the DOS version which determines the layout of the VTOC.
+	 * 
+	 * @return The DOS version, not <code>null</code>.
+	 */
+	public DosVersion getDosVersion() {
+		return dosVersion;
+	}
+
+	/**
+	 * Gets the highest sector number covered by the VTOC.
+	 * 
+	 * @return The highest sector number, a positive integer.
+	 */
+	public int getSectorCount() {
+		return sectorCount;
+	}
+
+	/**
+	 * Gets the number of free sectors.
+	 * 
+	 * @return The number of free sectors, a non-negative integer.
+	 */
+	public int getFreeSectorCount() {
+		return freeSectorCount;
+	}
+
+	/**
+	 * Gets the number of free sectors as stored in the VTOC sectors when they
+	 * were read.
+	 * 
+	 * @return The number of free sectors, a non-negative integer.
+	 */
+	int getStoredFreeSectorCount() {
+		return storedFreeSectorCount;
+	}
+
+	/**
+	 * Gets 64 bits of the bitmap.
+	 * 
+	 * @param index
+	 *            The index of the bits, starting with sector 0 for index 0.
+	 * @return The bits, with bit 0 for the first sector, set if the sector is
+	 *         free.
+	 */
+	long getFreeBits(int index) {
+		return bits[index];
+	}
+
+	/**
+	 * Gets the number of free sectors in a range.
+	 * 
+	 * @param firstSectorNumber
+	 *            The first sector number of the range, a positive integer.
+	 * @param lastSectorNumber
+	 *            The last sector number of the range, a positive integer.
+	 * @return The number of free sectors, a non-negative integer.
+	 */
+	public int getFreeSectorCount(int firstSectorNumber, int lastSectorNumber) {
+		firstSectorNumber = Math.max(0, firstSectorNumber);
+		lastSectorNumber = Math.min(sectorCount, lastSectorNumber);
+		if (firstSectorNumber > lastSectorNumber) {
+			return 0;
+		}
+		int firstWord = firstSectorNumber >>> 6;
+		int lastWord = lastSectorNumber >>> 6;
+		long firstMask = -1L << (firstSectorNumber & 63);
+		long lastMask = -1L >>> (63 - (lastSectorNumber & 63));
+		if (firstWord == lastWord) {
+			return Long.bitCount(bits[firstWord] & firstMask & lastMask);
+		}
+		int result = Long.bitCount(bits[firstWord] & firstMask) + Long.bitCount(bits[lastWord] & lastMask);
+		for (int i = firstWord + 1; i < lastWord; i++) {
+			result += Long.bitCount(bits[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Determines if a sector is free.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @return <code>true</code> if the sector is free, <code>false</code> if it
+	 *         is used or not covered by the VTOC.
+	 */
+	public boolean isSectorFree(int sectorNumber) {
+		if (sectorNumber <= 0 || sectorNumber > sectorCount) {
+			return false;
+		}
+		return isSectorFreeUnchecked(sectorNumber);
+	}
+
+	private boolean isSectorFreeUnchecked(int sectorNumber) {
+		return (bits[sectorNumber >>> 6] & (1L << sectorNumber)) != 0;
+	}
+
+	/**
+	 * Marks a sector as free or used.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number, a positive integer.
+	 * @param free
+	 *            <code>true</code> if the sector is free, <code>false</code> if
+	 *            it is used.
+	 * @throws AtrException
+	 *             If the sector is not covered by the VTOC.
+	 */
+	public void setSectorFree(int sectorNumber, boolean free) throws AtrException {
+		checkSectorNumber(sectorNumber);
+		setSectorFreeUnchecked(sectorNumber, free);
+	}
+
+	/**
+	 * Marks a range of sectors as free or used.
+	 * 
+	 * @param firstSectorNumber
+	 *            The first sector number of the range, a positive integer.
+	 * @param lastSectorNumber
+	 *            The last sector number of the range, a positive integer.
+	 * @param free
+	 *            <code>true</code> if the sectors are free, <code>false</code>
+	 *            if they are used.
+	 * @throws AtrException
+	 *             If a sector is not covered by the VTOC.
+	 */
+	public void setSectorsFree(int firstSectorNumber, int lastSectorNumber, boolean free) throws AtrException {
+		checkSectorNumber(firstSectorNumber);
+		checkSectorNumber(lastSectorNumber);
+		for (int sectorNumber = firstSectorNumber; sectorNumber <= lastSectorNumber; sectorNumber++) {
+			setSectorFreeUnchecked(sectorNumber, free);
+		}
+	}
+
+	private void setSectorFreeUnchecked(int sectorNumber, boolean free) {
+		int index = sectorNumber >>> 6;
+		long mask = 1L << sectorNumber;
+		long word = bits[index];
+		if (free && (word & mask) == 0) {
+			bits[index] = word | mask;
+			freeSectorCount++;
+		} else if (!free && (word & mask) != 0) {
+			bits[index] = word & ~mask;
+			freeSectorCount--;
+		}
+	}
+
+	/**
+	 * Gets the next free sector.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number to start the search from, a non-negative
+	 *            integer.
+	 * @return The number of the next free sector greater or equal to the
+	 *         specified sector number or -1 if there is none.
+	 */
+	public int getNextFreeSector(int sectorNumber) {
+		return getNextSector(Math.max(1, sectorNumber), 0L);
+	}
+
+	/**
+	 * Gets the next used sector.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number to start the search from, a non-negative
+	 *            integer.
+	 * @return The number of the next used sector greater or equal to the
+	 *         specified sector number or -1 if there is none.
+	 */
+	public int getNextUsedSector(int sectorNumber) {
+		return getNextSector(Math.max(1, sectorNumber), -1L);
+	}
+
+	/**
+	 * Gets the next sector where the bit is not equal to the inversion mask.
+	 * 
+	 * @param sectorNumber
+	 *            The sector number to start the search from.
+	 * @param inversion
+	 *            0 to find free sectors, -1 to find used sectors.
+	 * @return The sector number or -1.
+	 */
+	private int getNextSector(int sectorNumber, long inversion) {
+		if (sectorNumber > sectorCount) {
+			return -1;
+		}
+		int index = sectorNumber >>> 6;
+		long word = (bits[index] ^ inversion) & (-1L << (sectorNumber & 63));
+		while (word == 0) {
+			index++;
+			if (index >= bits.length) {
+				return -1;
+			}
+			word = bits[index] ^ inversion;
+		}
+		int result = (index << 6) + Long.numberOfTrailingZeros(word);
+		return result <= sectorCount ? result : -1;
+	}
+
+	/**
+	 * Finds the first run of consecutive free sectors.
+	 * 
+	 * @param length
+	 *            The number of sectors, a positive integer.
+	 * @return The number of the first sector of the run or -1 if there is no run
+	 *         of the specified length.
+	 */
+	public int findFreeRun(int length) {
+		if (length < 1) {
+			throw new IllegalArgumentException(
+					"Parameter 'length' must be positive. Specified value is " + length + ".");
+		}
+		int sectorNumber = getNextFreeSector(1);
+		while (sectorNumber >= 0) {
+			int end = getNextUsedSector(sectorNumber);
+			if (end < 0) {
+				end = sectorCount + 1;
+			}
+			if (end - sectorNumber >= length) {
+				return sectorNumber;
+			}
+			sectorNumber = getNextFreeSector(end);
+		}
+		return -1;
+	}
+
+	/**
+	 * Allocates the free sectors with the lowest numbers.
+	 * 
+	 * @param count
+	 *            The number of sectors, a non-negative integer.
+	 * @return The ascending sector numbers, not <code>null</code>.
+	 * @throws AtrException
+	 *             If there are not enough free sectors.
+	 */
+	public int[] allocate(int count) throws AtrException {
+		if (count < 0) {
+			throw new IllegalArgumentException(
+					"Parameter 'count' must not be negative. Specified value is " + count + ".");
+		}
+		if (count > freeSectorCount) {
+			throw new AtrException(
+					count + " sectors are required but only " + freeSectorCount + " sectors are free.");
+		}
+		int[] result = new int[count];
+		int sectorNumber = 0;
+		for (int i = 0; i < count; i++) {
+			sectorNumber = getNextFreeSector(sectorNumber + 1);
+			result[i] = sectorNumber;
+			setSectorFreeUnchecked(sectorNumber, false);
+		}
+		return result;
+	}
+
+	/**
+	 * Allocates the first run of consecutive free sectors.
+	 * 
+	 * @param length
+	 *            The number of sectors, a positive integer.
+	 * @return The number of the first sector of the run or -1 if there is no run
+	 *         of the specified length.
+	 */
+	public int allocateRun(int length) {
+		int result = findFreeRun(length);
+		if (result > 0) {
+			for (int sectorNumber = result; sectorNumber < result + length; sectorNumber++) {
+				setSectorFreeUnchecked(sectorNumber, false);
+			}
+		}
+		return result;
+	}
+
+	private void checkSectorNumber(int sectorNumber) throws AtrException {
+		if (sectorNumber <= 0) {
+			throw new AtrException(
+					"Parameter 'sectorNumber' must be positive. Specified value is " + sectorNumber + ".");
+		}
+		if (sectorNumber > sectorCount) {
+			throw new AtrException("Parameter 'sectorNumber' must not be greater than the highest sector "
+					+ sectorCount + " of the VTOC. Specified value is " + sectorNumber + ".");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DOS=" + dosVersion + ", sectorCount=" + sectorCount + ", freeSectorCount=" + freeSectorCount;
+	}
+}
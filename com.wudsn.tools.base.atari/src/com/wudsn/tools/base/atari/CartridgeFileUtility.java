@@ -21,6 +21,8 @@ package com.wudsn.tools.base.atari;
 
 import static com.wudsn.tools.base.common.ByteArrayUtility.KB;
 
+import java.nio.ByteBuffer;
+
 /**
  * Utility class to handle ".CAR" files.
  */
@@ -29,6 +31,13 @@ public final class CartridgeFileUtility {
 	// Number of bytes for the "CART" header.
 	public static final int CART_HEADER_SIZE = 16;
 
+	// Masks to split a long into 4 lanes of 16 bits for the checksum.
+	private static final long MASK_BYTE_LANES = 0x00ff00ff00ff00ffL;
+	private static final long MASK_SHORT_LANES = 0x0000ffff0000ffffL;
+
+	// Number of longs which can be summed up before a 16 bit lane can overflow.
+	private static final int CHECKSUM_BLOCK_LONGS = 128;
+
 	/**
 	 * Creation is private.
 	 */
@@ -85,27 +94,82 @@ public final class CartridgeFileUtility {
 	}
 
 	/**
-	 * Computes the 32 bit / 4 byte ROM checksum. See <a href=
+	 * Strip the cartridge header and return a view of the content. The content is
+	 * not copied.
+	 * 
+	 * @param content
+	 *            The file content, not <code>null</code>. The type of the content
+	 *            must have been detected with a cartridge type using
+	 *            {@link CartridgeFileUtility#getCartridgeTypeNumericId(byte[])} .
+	 * 
+	 * @return The buffer with the content without header between position 0 and
+	 *         the limit, not <code>null</code>.
+	 */
+	public static ByteBuffer getCartridgeContentBuffer(byte[] content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter content must not be null.");
+		}
+		return getCartridgeContentBuffer(ByteBuffer.wrap(content));
+	}
+
+	/**
+	 * Strip the cartridge header and return a view of the content. The content is
+	 * not copied.
+	 * 
+	 * @param content
+	 *            The file content between position and the limit of the buffer,
+	 *            not <code>null</code>. The position of the buffer is not modified.
+	 * 
+	 * @return The buffer with the content without header between position 0 and
+	 *         the limit, not <code>null</code>.
+	 */
+	public static ByteBuffer getCartridgeContentBuffer(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter content must not be null.");
+		}
+		if (content.remaining() < CART_HEADER_SIZE) {
+			throw new IllegalArgumentException("Parameter content must have at least " + CART_HEADER_SIZE
+					+ " bytes. Specified buffer has " + content.remaining() + " bytes.");
+		}
+		ByteBuffer buffer = content.duplicate();
+		buffer.position(buffer.position() + CART_HEADER_SIZE);
+		return buffer.slice();
+	}
+
+	/**
+	 * Computes the 32 bit / 4 byte ROM checksum over the remaining bytes of a
+	 * buffer. See <a href=
 	 * "https://atari800.cvs.sourceforge.net/viewvc/atari800/atari800/src/cartridge.c"
-	 * >Atari800</a>.
+	 * >Atari800</a>. The bytes are processed 8 at a time. Each long is split into 4 lanes
+	 * of 16 bits which accumulate the unsigned bytes and which are summed up before
+	 * they can overflow.
 	 * 
 	 * @param content
-	 *            The ROM content, not <code>null</code>.
-	 * @param startOffset
-	 *            The start offset, a non-negative integer.
+	 *            The ROM content between the position and the limit of the
+	 *            buffer, not <code>null</code>. The position of the buffer is not
+	 *            modified.
 	 * @return The 32 bit / 4 byte checksum.
 	 */
-	private static int getCartridgeHeaderCheckSum(byte[] content, int startOffset) {
+	public static int getCartridgeHeaderCheckSum(ByteBuffer content) {
 		if (content == null) {
 			throw new IllegalArgumentException("Parameter 'content' must not be null.");
 		}
-		if (startOffset < 0) {
-			throw new IllegalArgumentException(
-					"Parameter 'startOffset' must not be negative. Specified values is " + startOffset + ".");
-		}
+		int position = content.position();
+		int limit = content.limit();
 		int result = 0;
-		for (int i = startOffset; i < content.length; i++) {
-			result += (content[i] & 0xff); // add unsigned bytes
+		while (limit - position >= 8) {
+			int longs = Math.min((limit - position) >>> 3, CHECKSUM_BLOCK_LONGS);
+			long lanes = 0;
+			for (int i = 0; i < longs; i++) {
+				long value = content.getLong(position);
+				lanes += (value & MASK_BYTE_LANES) + ((value >>> 8) & MASK_BYTE_LANES);
+				position += 8;
+			}
+			lanes = (lanes & MASK_SHORT_LANES) + ((lanes >>> 16) & MASK_SHORT_LANES);
+			result += (int) (lanes + (lanes >>> 32));
+		}
+		while (position < limit) {
+			result += (content.get(position++) & 0xff); // add unsigned bytes
 		}
 		return result;
 	}
@@ -125,6 +189,42 @@ public final class CartridgeFileUtility {
 		if (content == null) {
 			throw new IllegalArgumentException("Parameter 'content' must not be null.");
 		}
+		return createCartridgeHeaderWithCheckSum(cartridgeTypeNumericId, ByteBuffer.wrap(content));
+	}
+
+	/**
+	 * Create header of {@link #CART_HEADER_SIZE} to make the content a valid
+	 * cartridge file of the specified type.
+	 * 
+	 * @param cartridgeTypeNumericId
+	 *            The cartridge type numeric id, see {@link CartridgeType}.
+	 * @param content
+	 *            The cartridge content between the position and the limit of the
+	 *            buffer, not <code>null</code>. The position of the buffer is not
+	 *            modified.
+	 * 
+	 * @return The cartridge header, not <code>null</code>.
+	 */
+	public static byte[] createCartridgeHeaderWithCheckSum(int cartridgeTypeNumericId, ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		return createCartridgeHeader(cartridgeTypeNumericId, getCartridgeHeaderCheckSum(content));
+	}
+
+	/**
+	 * Create header of {@link #CART_HEADER_SIZE} with a checksum which has been
+	 * computed already, for example incrementally using
+	 * {@link #getCartridgeHeaderCheckSum(ByteBuffer)}.
+	 * 
+	 * @param cartridgeTypeNumericId
+	 *            The cartridge type numeric id, see {@link CartridgeType}.
+	 * @param checkSum
+	 *            The 32 bit / 4 byte checksum of the cartridge content.
+	 * 
+	 * @return The cartridge header, not <code>null</code>.
+	 */
+	public static byte[] createCartridgeHeader(int cartridgeTypeNumericId, int checkSum) {
 
 		// Magic number
 		byte[] header = new byte[CART_HEADER_SIZE];
@@ -143,7 +243,6 @@ public final class CartridgeFileUtility {
 		header[4] = (byte) (cartridgeTypeNumericId & 0xff);
 
 		// Checksum
-		int checkSum = getCartridgeHeaderCheckSum(content, 0);
 		header[11] = (byte) (checkSum & 0xff);
 		checkSum = checkSum >>> 8;
 		header[10] = (byte) (checkSum & 0xff);
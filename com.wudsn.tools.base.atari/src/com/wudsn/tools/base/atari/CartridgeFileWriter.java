@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Streaming writer for cartridge files in CAR format. The space for the "CART"
+ * header is reserved first, the ROM content is copied incrementally while the
+ * checksum is accumulated, and the header is written at the reserved position
+ * when the writer is finished. The memory consumption is constant for ROMs of
+ * any size.
+ * 
+ * @author Peter Dell
+ */
+public final class CartridgeFileWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final int cartridgeTypeNumericId;
+	private final long headerPosition;
+	private int checkSum;
+	private long contentSize;
+	private boolean finished;
+
+	/**
+	 * Creates a writer and reserves the space for the header at the current
+	 * position of the channel.
+	 * 
+	 * @param channel
+	 *            The file channel opened for writing, not <code>null</code>.
+	 * @param cartridgeTypeNumericId
+	 *            The cartridge type numeric id, see {@link CartridgeType}.
+	 * @throws IOException
+	 *             If the header cannot be reserved.
+	 */
+	public CartridgeFileWriter(FileChannel channel, int cartridgeTypeNumericId) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+		this.channel = channel;
+		this.cartridgeTypeNumericId = cartridgeTypeNumericId;
+		headerPosition = channel.position();
+		writeFully(ByteBuffer.allocate(CartridgeFileUtility.CART_HEADER_SIZE));
+	}
+
+	/**
+	 * Writes ROM content.
+	 * 
+	 * @param content
+	 *            The content between the position and the limit of the buffer,
+	 *            not <code>null</code>. The position of the buffer is moved to the
+	 *            limit.
+	 * @throws IOException
+	 *             If the content cannot be written.
+	 */
+	public void write(ByteBuffer content) throws IOException {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		checkNotFinished();
+		checkSum += CartridgeFileUtility.getCartridgeHeaderCheckSum(content);
+		contentSize += content.remaining();
+		writeFully(content);
+	}
+
+	/**
+	 * Writes the ROM content read from an input stream until its end.
+	 * 
+	 * @param inputStream
+	 *            The input stream, not <code>null</code>. The stream is not
+	 *            closed.
+	 * @return The number of bytes written, a non-negative integer.
+	 * @throws IOException
+	 *             If the content cannot be read or written.
+	 */
+	public long write(InputStream inputStream) throws IOException {
+		if (inputStream == null) {
+			throw new IllegalArgumentException("Parameter 'inputStream' must not be null.");
+		}
+		checkNotFinished();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long result = 0;
+		int count;
+		while ((count = inputStream.read(buffer)) != -1) {
+			write(ByteBuffer.wrap(buffer, 0, count));
+			result += count;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the ROM content read from a channel until its end.
+	 * 
+	 * @param inputChannel
+	 *            The input channel, not <code>null</code>. The channel is not
+	 *            closed.
+	 * @return The number of bytes written, a non-negative integer.
+	 * @throws IOException
+	 *             If the content cannot be read or written.
+	 */
+	public long write(ReadableByteChannel inputChannel) throws IOException {
+		if (inputChannel == null) {
+			throw new IllegalArgumentException("Parameter 'inputChannel' must not be null.");
+		}
+		checkNotFinished();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		long result = 0;
+		int count;
+		while ((count = inputChannel.read(buffer)) != -1) {
+			buffer.flip();
+			write(buffer);
+			buffer.clear();
+			result += count;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the header with the final checksum at the reserved position. The
+	 * position of the channel remains at the end of the content.
+	 * 
+	 * @throws IOException
+	 *             If the header cannot be written.
+	 */
+	public void finish() throws IOException {
+		checkNotFinished();
+		ByteBuffer header = ByteBuffer
+				.wrap(CartridgeFileUtility.createCartridgeHeader(cartridgeTypeNumericId, checkSum));
+		long position = headerPosition;
+		while (header.hasRemaining()) {
+			position += channel.write(header, position);
+		}
+		finished = true;
+	}
+
+	/**
+	 * Gets the number of ROM content bytes written so far.
+	 * 
+	 * @return The number of ROM content bytes, a non-negative integer.
+	 */
+	public long getContentSize() {
+		return contentSize;
+	}
+
+	/**
+	 * Gets the checksum of the ROM content written so far.
+	 * 
+	 * @return The 32 bit / 4 byte checksum.
+	 */
+	public int getCheckSum() {
+		return checkSum;
+	}
+
+	private void checkNotFinished() {
+		if (finished) {
+			throw new IllegalStateException("Writer is already finished.");
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -279,6 +279,8 @@ public final class CartridgeType extends ValueSet {
 	public static final CartridgeType CARTRIDGE_ATMAX_NEW_1024; // 75
 	// Instances
 	private static final Map<String, CartridgeType> values;
+	private static final List<CartridgeType> valueList;
+	private static final CartridgeType[] valuesByNumericId;
 
 	// Instance variables.
 	private Platform platform;
@@ -510,6 +512,19 @@ public final class CartridgeType extends ValueSet {
 		CARTRIDGE_ATMAX_NEW_1024 = add(75, "CARTRIDGE_ATMAX_NEW_1024", Platform.ATARI_800, 1024, bank_size_2000,
 				initial_bank_0 * bank_size_2000, adr_a000, initial_bank_0, block_size_10000);
 
+		// Index of all values by numeric id for constant time lookup.
+		valueList = Collections.unmodifiableList(new ArrayList<CartridgeType>(values.values()));
+		int maxNumericId = 0;
+		for (CartridgeType value : valueList) {
+			maxNumericId = Math.max(maxNumericId, value.numericId);
+		}
+		valuesByNumericId = new CartridgeType[maxNumericId + 1];
+		for (CartridgeType value : valueList) {
+			if (valuesByNumericId[value.numericId] == null) {
+				valuesByNumericId[value.numericId] = value;
+			}
+		}
+
 		initializeClass(CartridgeType.class, ValueSets.class);
 	}
 
@@ -552,7 +567,7 @@ public final class CartridgeType extends ValueSet {
 	 * @return The unmodifiable list of all values, not <code>null</code>.
 	 */
 	public static List<CartridgeType> getValues() {
-		return Collections.unmodifiableList(new ArrayList<CartridgeType>(values.values()));
+		return valueList;
 	}
 
 	/**
@@ -562,12 +577,31 @@ public final class CartridgeType extends ValueSet {
 	 * @return The value set instance or <code>null</code>.
 	 */
 	public static CartridgeType getInstance(int numbericId) {
-		for (CartridgeType i : getValues()) {
-			if (i.getNumericId() == numbericId) {
-				return i;
-			}
+		if (numbericId < 0 || numbericId >= valuesByNumericId.length) {
+			return null;
 		}
-		return null;
+		return valuesByNumericId[numbericId];
+	}
+
+	/**
+	 * Gets the value set instances for many numeric IDs at once.
+	 * 
+	 * @param numericIds
+	 *            The numeric IDs, not <code>null</code>.
+	 * @return The array of value set instances with the same length as the array
+	 *         of numeric IDs, not <code>null</code>. An element is
+	 *         <code>null</code> if there is no value set instance for the numeric
+	 *         ID.
+	 */
+	public static CartridgeType[] getInstances(int[] numericIds) {
+		if (numericIds == null) {
+			throw new IllegalArgumentException("Parameter 'numericIds' must not be null.");
+		}
+		CartridgeType[] result = new CartridgeType[numericIds.length];
+		for (int i = 0; i < numericIds.length; i++) {
+			result[i] = getInstance(numericIds[i]);
+		}
+		return result;
 	}
 
 	/**
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.KB;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detection of the cartridge type of raw ROM content without "CART" header.
+ * The candidates are the cartridge types with the size of the content. Each
+ * candidate is scored based on the vectors at the end of the initial bank as
+ * it is visible to the CPU after reset, see
+ * {@link CartridgeType#getInitialBankOffset()},
+ * {@link CartridgeType#getBankSize()} and
+ * {@link CartridgeType#getInitialBankAddress()}, and based on whether the
+ * code accesses the bank switching area $D5xx. The content is read with
+ * absolute reads only, so it can be memory-mapped.
+ * 
+ * @author Peter Dell
+ */
+public final class CartridgeTypeDetector {
+
+	/**
+	 * Scored candidate for the cartridge type.
+	 */
+	public static final class Candidate {
+		private final CartridgeType cartridgeType;
+		private final int score;
+
+		Candidate(CartridgeType cartridgeType, int score) {
+			this.cartridgeType = cartridgeType;
+			this.score = score;
+		}
+
+		public CartridgeType getCartridgeType() {
+			return cartridgeType;
+		}
+
+		/**
+		 * Gets the score of the candidate.
+		 * 
+		 * @return The score between 0 and {@link CartridgeTypeDetector#MAXIMUM_SCORE}.
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return cartridgeType.getId() + "=" + score;
+		}
+	}
+
+	/**
+	 * Maximum score of a candidate.
+	 */
+	public static final int MAXIMUM_SCORE = 100;
+
+	/**
+	 * Minimum score of a candidate to be returned by default. A candidate with
+	 * this score has a valid cartridge trailer.
+	 */
+	public static final int DEFAULT_MINIMUM_SCORE = 50;
+
+	// Score for the size of the content.
+	private static final int SIZE_SCORE = 10;
+
+	// Scores for the cartridge trailer.
+	private static final int PRESENT_SCORE = 20;
+	private static final int OPTIONS_SCORE = 10;
+	private static final int VECTOR_SCORE = 25;
+	private static final int VECTOR_OUTSIDE_SCORE = 5;
+
+	// Score if the bank switching accesses match the bank layout.
+	private static final int BANK_SWITCHING_SCORE = 10;
+
+	// Address of the cartridge trailer relative to the end of the window.
+	private static final int TRAILER_SIZE = 6;
+
+	private static final int LEFT_WINDOW_END = 0xc000;
+	private static final int RIGHT_WINDOW_END = 0xa000;
+
+	// Option bits of the Atari 800 cartridge trailer: boot disk, start
+	// cartridge, diagnostic cartridge.
+	private static final int OPTION_BITS = 0x85;
+
+	// Bank switching area.
+	private static final int BANK_SWITCHING_PAGE = 0xd5;
+
+	private static final Map<Integer, List<CartridgeType>> cartridgeTypesBySizeInKB;
+
+	static {
+		cartridgeTypesBySizeInKB = new HashMap<Integer, List<CartridgeType>>();
+		for (CartridgeType cartridgeType : CartridgeType.getValues()) {
+			if (cartridgeType.getSizeInKB() <= 0 || cartridgeType.getBankSize() <= 0) {
+				continue;
+			}
+			Integer key = Integer.valueOf(cartridgeType.getSizeInKB());
+			List<CartridgeType> list = cartridgeTypesBySizeInKB.get(key);
+			if (list == null) {
+				list = new ArrayList<CartridgeType>();
+				cartridgeTypesBySizeInKB.put(key, list);
+			}
+			list.add(cartridgeType);
+		}
+	}
+
+	/**
+	 * Creation is private.
+	 */
+	private CartridgeTypeDetector() {
+
+	}
+
+	/**
+	 * Detects the cartridge type of a ROM content.
+	 * 
+	 * @param content
+	 *            The content without header, not <code>null</code>.
+	 * @return The modifiable list of candidates with at least the
+	 *         {@link #DEFAULT_MINIMUM_SCORE}, ordered by descending score, may
+	 *         be empty, not <code>null</code>.
+	 */
+	public static List<Candidate> detect(byte[] content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		return detect(ByteBuffer.wrap(content), DEFAULT_MINIMUM_SCORE);
+	}
+
+	/**
+	 * Detects the cartridge type of a ROM file. The file is memory-mapped.
+	 * 
+	 * @param file
+	 *            The file with the content without header, not
+	 *            <code>null</code>.
+	 * @return The modifiable list of candidates with at least the
+	 *         {@link #DEFAULT_MINIMUM_SCORE}, ordered by descending score, may
+	 *         be empty, not <code>null</code>.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 */
+	public static List<Candidate> detect(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter 'file' must not be null.");
+		}
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				return new ArrayList<Candidate>();
+			}
+			return detect(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), DEFAULT_MINIMUM_SCORE);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Detects the cartridge type of a ROM content.
+	 * 
+	 * @param content
+	 *            The buffer with the content without header between the
+	 *            position and the limit, not <code>null</code>. The position of
+	 *            the buffer is not modified.
+	 * @param minimumScore
+	 *            The minimum score of the candidates to be returned, between 0
+	 *            and {@link #MAXIMUM_SCORE}.
+	 * @return The modifiable list of candidates, ordered by descending score
+	 *         and ascending numeric id, may be empty, not <code>null</code>.
+	 */
+	public static List<Candidate> detect(ByteBuffer content, int minimumScore) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		List<Candidate> result = new ArrayList<Candidate>();
+		int size = content.remaining();
+		if (size == 0 || size % KB != 0) {
+			return result;
+		}
+		List<CartridgeType> cartridgeTypes = cartridgeTypesBySizeInKB.get(Integer.valueOf(size / KB));
+		if (cartridgeTypes == null) {
+			return result;
+		}
+
+		ByteBuffer view = content.slice();
+		boolean bankSwitching = hasBankSwitchingAccess(view);
+		for (CartridgeType cartridgeType : cartridgeTypes) {
+			int score = getScore(view, cartridgeType, bankSwitching);
+			if (score >= minimumScore) {
+				result.add(new Candidate(cartridgeType, score));
+			}
+		}
+		Collections.sort(result, new Comparator<Candidate>() {
+
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+				if (o1.score != o2.score) {
+					return o2.score - o1.score;
+				}
+				return o1.cartridgeType.getNumericId() - o2.cartridgeType.getNumericId();
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Computes the score of a cartridge type for a content with matching size.
+	 * 
+	 * @param content
+	 *            The content starting at index 0, not <code>null</code>.
+	 * @param cartridgeType
+	 *            The cartridge type, not <code>null</code>.
+	 * @param bankSwitching
+	 *            <code>true</code> if the content accesses the bank switching
+	 *            area.
+	 * @return The score between 0 and {@link #MAXIMUM_SCORE}.
+	 */
+	private static int getScore(ByteBuffer content, CartridgeType cartridgeType, boolean bankSwitching) {
+		int score = SIZE_SCORE;
+		int bankSize = cartridgeType.getBankSize();
+		int address = cartridgeType.getInitialBankAddress();
+
+		// The initial bank is mirrored if it is smaller than the window which
+		// ends at $A000 for the right and at $C000 for the left cartridge.
+		int windowEnd = LEFT_WINDOW_END;
+		if (address < RIGHT_WINDOW_END && address + bankSize <= RIGHT_WINDOW_END) {
+			windowEnd = RIGHT_WINDOW_END;
+		}
+		int windowStart = Math.max(address, windowEnd - Math.max(bankSize, KB * 8));
+		int trailerOffset = cartridgeType.getInitialBankOffset() + (windowEnd - TRAILER_SIZE - address) % bankSize;
+		if (trailerOffset < 0 || trailerOffset + TRAILER_SIZE > content.limit()) {
+			return 0;
+		}
+
+		if (cartridgeType.getPlatform() == Platform.ATARI_5200) {
+			// $BFFD is $FF or the year, $BFFE/$BFFF is the start vector.
+			int vector = getWord(content, trailerOffset + 4);
+			if (isInRange(vector, windowStart, windowEnd)) {
+				score += VECTOR_SCORE * 2;
+			} else if (isInRange(vector, 0x4000, LEFT_WINDOW_END)) {
+				score += VECTOR_OUTSIDE_SCORE * 2;
+			}
+			if ((content.get(trailerOffset + 3) & 0xff) == 0xff) {
+				score += PRESENT_SCORE + OPTIONS_SCORE;
+			}
+		} else {
+			// $BFFA/$BFFB is the run vector, $BFFC is 0 if a cartridge is
+			// present, $BFFD contains the options and $BFFE/$BFFF is the init
+			// vector.
+			if (content.get(trailerOffset + 2) == 0) {
+				score += PRESENT_SCORE;
+			}
+			if ((content.get(trailerOffset + 3) & ~OPTION_BITS) == 0) {
+				score += OPTIONS_SCORE;
+			}
+			for (int vectorOffset = 0; vectorOffset <= 4; vectorOffset += 4) {
+				int vector = getWord(content, trailerOffset + vectorOffset);
+				if (isInRange(vector, windowStart, windowEnd)) {
+					score += VECTOR_SCORE;
+				} else if (vector < LEFT_WINDOW_END) {
+					score += VECTOR_OUTSIDE_SCORE;
+				}
+			}
+		}
+
+		// Only cartridges with more than one bank need bank switching.
+		boolean multipleBanks = cartridgeType.getSizeInKB() * KB > Math.max(bankSize, windowEnd - windowStart);
+		if (multipleBanks == bankSwitching) {
+			score += BANK_SWITCHING_SCORE;
+		}
+		return Math.min(score, MAXIMUM_SCORE);
+	}
+
+	private static int getWord(ByteBuffer content, int index) {
+		return (content.get(index) & 0xff) | (content.get(index + 1) & 0xff) << 8;
+	}
+
+	private static boolean isInRange(int value, int start, int end) {
+		return value >= start && value < end;
+	}
+
+	/**
+	 * Determines if the content contains absolute reads or writes to the bank
+	 * switching area $D500-$D5FF.
+	 * 
+	 * @param content
+	 *            The content starting at index 0, not <code>null</code>.
+	 * @return <code>true</code> if such an access was found.
+	 */
+	private static boolean hasBankSwitchingAccess(ByteBuffer content) {
+		int limit = content.limit() - 2;
+		for (int i = 0; i < limit; i++) {
+			if ((content.get(i + 2) & 0xff) != BANK_SWITCHING_PAGE) {
+				continue;
+			}
+			switch (content.get(i) & 0xff) {
+			case 0x8c: // STY abs
+			case 0x8d: // STA abs
+			case 0x8e: // STX abs
+			case 0x99: // STA abs,Y
+			case 0x9d: // STA abs,X
+			case 0xac: // LDY abs
+			case 0xad: // LDA abs
+			case 0xae: // LDX abs
+				return true;
+			default:
+				break;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DirectoryEntry;
+
+/**
+ * File system of DOS 2.0S, DOS 2.5 and MyDOS with the directory in the
+ * sectors 361 to 368 and files stored as chains of linked sectors. The sectors
+ * are copied into buffers which are allocated once per call or stream, so no
+ * objects are allocated per sector.
+ * Instances are created by the {@link AtariDosFileSystemProvider} and the
+ * {@link MyDosFileSystemProvider}.
+ * 
+ * @author Peter Dell
+ */
+final class Dos2FileSystem implements AtrFileSystem {
+
+	/**
+	 * Input stream which follows the DOS 2 sector links lazily while reading.
+	 * Only the current sector is kept, so the memory consumption is constant
+	 * for files of any size.
+	 */
+	private final class FileContentInputStream extends InputStream {
+		private int nextSectorNumber;
+		private final byte[] sector;
+		private int position;
+		private int bytesUsed;
+		private int sectorsRead;
+
+		FileContentInputStream(int startSectorNumber) {
+			nextSectorNumber = startSectorNumber;
+			sector = new byte[getMaximumSectorSize()];
+		}
+
+		/**
+		 * Moves to the next sector with data.
+		 * 
+		 * @return <code>true</code> if there is data left, <code>false</code> if
+		 *         the end of the sector chain is reached.
+		 * @throws IOException
+		 *             If a sector link is invalid.
+		 */
+		private boolean nextSector() throws IOException {
+			while (position == bytesUsed) {
+				if (nextSectorNumber == 0) {
+					return false;
+				}
+				if (sectorsRead++ >= atrFile.getSectorCount()) {
+					throw new IOException("Sector chain contains a cycle at sector " + nextSectorNumber + ".");
+				}
+				try {
+					int size = atrFile.getSector(nextSectorNumber, sector, 0);
+					bytesUsed = getBytesUsed(sector, 0, size, nextSectorNumber);
+					nextSectorNumber = getNextSectorNumber(sector, 0, size);
+					position = 0;
+				} catch (AtrException ex) {
+					throw new IOException(ex.getMessage(), ex);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextSector()) {
+				return -1;
+			}
+			return sector[position++] & MASK_FF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (buffer == null) {
+				throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+			}
+			if (offset < 0 || length < 0 || offset + length > buffer.length) {
+				throw new IndexOutOfBoundsException(
+						"Invalid offset " + offset + " and length " + length + " for buffer length " + buffer.length);
+			}
+			if (length == 0) {
+				return 0;
+			}
+			int count = 0;
+			while (count < length && nextSector()) {
+				int chunk = Math.min(bytesUsed - position, length - count);
+				System.arraycopy(sector, position, buffer, offset + count, chunk);
+				position += chunk;
+				count += chunk;
+			}
+			return count == 0 ? -1 : count;
+		}
+
+		@Override
+		public int available() {
+			return bytesUsed - position;
+		}
+	}
+
+	// Layout of the DOS 2.x and MyDOS directory.
+	static final int DIRECTORY_SECTOR = 361;
+	static final int DIRECTORY_SECTORS = 8;
+	static final int DIRECTORY_ENTRY_SIZE = 16;
+	static final int DIRECTORY_ENTRIES_PER_SECTOR = AtrFile.SECTOR_SIZE_SD / DIRECTORY_ENTRY_SIZE;
+
+	// Directory entry flags.
+	static final int FLAG_DELETED = 0x80;
+	static final int FLAG_IN_USE = 0x40;
+	static final int FLAG_SUBDIRECTORY = 0x10;
+	static final int FLAG_MYDOS_LINKS = 0x04;
+	static final int FLAG_DOS2 = 0x02;
+
+	// Directory entry fields.
+	static final int ENTRY_SECTOR_COUNT_OFFSET = 1;
+	static final int ENTRY_START_SECTOR_OFFSET = 3;
+	static final int ENTRY_FILE_NAME_OFFSET = 5;
+	static final int FILE_NAME_LENGTH = 8;
+	static final int EXTENSION_LENGTH = 3;
+
+	// Number of link bytes at the end of a data sector.
+	static final int LINK_SIZE = 3;
+
+	private final AtrFile atrFile;
+
+	/**
+	 * Creates a file system.
+	 * 
+	 * @param atrFile
+	 *            The ATR file, not <code>null</code>.
+	 */
+	Dos2FileSystem(AtrFile atrFile) {
+		if (atrFile == null) {
+			throw new IllegalArgumentException("Parameter 'atrFile' must not be null.");
+		}
+		this.atrFile = atrFile;
+	}
+
+	@Override
+	public List<DirectoryEntry> readDirectory() throws AtrException {
+		List<DirectoryEntry> result = new ArrayList<DirectoryEntry>();
+		int sectorNumber = DIRECTORY_SECTOR;
+
+		// One buffer for all directory sectors.
+		byte[] sector = new byte[getMaximumSectorSize()];
+		boolean complete = false;
+		while (!complete) {
+			int size = atrFile.getSector(sectorNumber, sector, 0);
+			// Only the 128 bytes of the directory sectors are use, irrespective
+			// of the density.
+			int relevantSectorSize = Math.min(AtrFile.SECTOR_SIZE_SD, size);
+			int offset = 0;
+			while (offset < relevantSectorSize && !complete) {
+				byte status = sector[offset];
+				if (status == 0x00) {
+					complete = true;
+				} else {
+					// Entry not deleted and in use?
+					if ((status & FLAG_DELETED) == 0x00 && (status & FLAG_IN_USE) != 0x00) {
+						String fileName = new String(sector, offset + ENTRY_FILE_NAME_OFFSET, FILE_NAME_LENGTH);
+						String extension = new String(sector, offset + ENTRY_FILE_NAME_OFFSET + FILE_NAME_LENGTH,
+								EXTENSION_LENGTH);
+						String dosFileName = fileName.trim() + "." + extension.trim();
+
+						int startSectorLow = (sector[offset + ENTRY_START_SECTOR_OFFSET] & MASK_FF);
+						int startSectorHigh = (sector[offset + ENTRY_START_SECTOR_OFFSET + 1] & MASK_FF);
+						int startSector = startSectorLow + (startSectorHigh << 8);
+
+						DirectoryEntry directoryEntry = new DirectoryEntry(fileName + extension, dosFileName,
+								startSector);
+						result.add(directoryEntry);
+					}
+				}
+				offset += DIRECTORY_ENTRY_SIZE;
+			}
+			sectorNumber++;
+		}
+		return result;
+	}
+
+	@Override
+	public byte[] getFileContent(DirectoryEntry directoryEntry, List<Integer> usedSectors) throws AtrException {
+		if (directoryEntry == null) {
+			throw new IllegalArgumentException("Parameter 'directoryEntry' must not be null.");
+		}
+		// The sectors are copied directly into the result. The link bytes of a
+		// sector are overwritten by the next sector.
+		int maximumSectorSize = getMaximumSectorSize();
+		byte[] data = new byte[16 * maximumSectorSize];
+		int length = 0;
+		int sectorNumber = directoryEntry.getStartSector();
+		for (int count = 0; sectorNumber != 0; count++) {
+			if (count >= atrFile.getSectorCount()) {
+				throw new AtrException("Sector chain of file '" + directoryEntry.getDosFileName()
+						+ "' contains a cycle at sector " + sectorNumber + ".");
+			}
+			if (usedSectors != null) {
+				usedSectors.add(Integer.valueOf(sectorNumber));
+			}
+
+			if (length + maximumSectorSize > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			int size = atrFile.getSector(sectorNumber, data, length);
+			int bytesUsed = getBytesUsed(data, length, size, sectorNumber);
+			sectorNumber = getNextSectorNumber(data, length, size);
+			length += bytesUsed;
+		}
+		return Arrays.copyOf(data, length);
+	}
+
+	@Override
+	public InputStream getFileContentInputStream(DirectoryEntry directoryEntry) throws AtrException {
+		if (directoryEntry == null) {
+			throw new IllegalArgumentException("Parameter 'directoryEntry' must not be null.");
+		}
+		return new FileContentInputStream(directoryEntry.getStartSector());
+	}
+
+	@Override
+	public AtrVtoc getVtoc() throws AtrException {
+		AtrVtoc result = AtrVtoc.createInstance(atrFile.getDosVersion(), atrFile.getSectorCount(),
+				atrFile.getSectorSize());
+		int[] vtocSectorNumbers = result.getVtocSectorNumbers();
+		for (int i = 0; i < vtocSectorNumbers.length; i++) {
+			result.readSector(i, atrFile.getSectorBuffer(vtocSectorNumbers[i]));
+		}
+		return result;
+	}
+
+	private int getMaximumSectorSize() {
+		return Math.max(AtrFile.SECTOR_SIZE_SD, atrFile.getSectorSize());
+	}
+
+	/**
+	 * Gets the number of bytes used in a DOS 2 data sector.
+	 * 
+	 * @param sector
+	 *            The buffer with the sector, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the sector in the buffer, a non-negative
+	 *            integer.
+	 * @param sectorSize
+	 *            The size of the sector, a positive integer.
+	 * @param sectorNumber
+	 *            The sector number for the error message.
+	 * @return The number of bytes used, a non-negative integer.
+	 * @throws AtrException
+	 *             If the number of bytes used is larger than the data area of
+	 *             the sector.
+	 */
+	private static int getBytesUsed(byte[] sector, int offset, int sectorSize, int sectorNumber)
+			throws AtrException {
+		int bytesUsed = sector[offset + sectorSize - 1] & MASK_FF;
+		if (bytesUsed > sectorSize - LINK_SIZE) {
+			throw new AtrException("Sector " + sectorNumber + " has an invalid byte count of " + bytesUsed + ".");
+		}
+		return bytesUsed;
+	}
+
+	/**
+	 * Gets the number of the next sector from the link bytes at the end of a DOS 2
+	 * data sector. For a 128 bytes sector, the structure is 125 data bytes and the
+	 * last 3 contain the link to the next sector and the file number (which is 6
+	 * bits), limiting to 64 files per disk.
+	 * 
+	 * @param sector
+	 *            The buffer with the sector, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the sector in the buffer, a non-negative
+	 *            integer.
+	 * @param sectorSize
+	 *            The size of the sector, a positive integer.
+	 * @return The next sector number or 0 if it is the last sector of the file.
+	 */
+	private static int getNextSectorNumber(byte[] sector, int offset, int sectorSize) {
+		// The upper 6 bits of the high byte are the file
+		// number. Only the lower 2 bits are part of the
+		// sector number.
+		int nextSectorLow = (sector[offset + sectorSize - 2] & MASK_FF);
+		int nextSectorHigh = (sector[offset + sectorSize - 3] & MASK_FF & 0x03);
+		return nextSectorLow + (nextSectorHigh << 8);
+	}
+}
@@ -19,8 +19,335 @@
 
 package com.wudsn.tools.base.atari;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.wudsn.tools.base.common.HexUtility;
+
 public final class ExecutableFile {
 
+	/**
+	 * Exception for invalid executable file content.
+	 */
+	@SuppressWarnings("serial")
+	public static final class ExecutableFileException extends IOException {
+		public ExecutableFileException(String text) {
+			super(text);
+		}
+	}
+
+	/**
+	 * Segment of an executable file.
+	 */
+	public static final class Segment {
+		private final long offset;
+		private final int startAddress;
+		private final int endAddress;
+		private final ByteBuffer content;
+		private final int runAddress;
+		private final int initAddress;
+
+		Segment(long offset, int startAddress, int endAddress, ByteBuffer content) {
+			this.offset = offset;
+			this.startAddress = startAddress;
+			this.endAddress = endAddress;
+			this.content = content;
+			this.runAddress = getWord(RUNAD);
+			this.initAddress = getWord(INITAD);
+		}
+
+		private int getWord(int address) {
+			if (address < startAddress || address + 1 > endAddress) {
+				return -1;
+			}
+			int index = content.position() + address - startAddress;
+			return (content.get(index) & 0xff) | (content.get(index + 1) & 0xff) << 8;
+		}
+
+		/**
+		 * Gets the offset of the segment header in the file.
+		 * 
+		 * @return The offset of the optional $FFFF marker or of the start address if
+		 *         there is no marker, a non-negative integer.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getStartAddress() {
+			return startAddress;
+		}
+
+		public int getEndAddress() {
+			return endAddress;
+		}
+
+		/**
+		 * Gets the number of bytes in the segment.
+		 * 
+		 * @return The number of bytes, a positive integer.
+		 */
+		public int getLength() {
+			return endAddress - startAddress + 1;
+		}
+
+		/**
+		 * Gets the content of the segment.
+		 * 
+		 * @return The read-only buffer with the content between position and limit,
+		 *         not <code>null</code>. For segments parsed from an array or a
+		 *         buffer, this is a view of the original content. For segments
+		 *         parsed from a stream, the content is only valid until the next
+		 *         segment is read.
+		 */
+		public ByteBuffer getContent() {
+			return content.duplicate();
+		}
+
+		/**
+		 * Gets the run address if the segment sets both bytes of RUNAD ($02E0).
+		 * 
+		 * @return The run address or -1.
+		 */
+		public int getRunAddress() {
+			return runAddress;
+		}
+
+		/**
+		 * Gets the init address if the segment sets both bytes of INITAD ($02E2).
+		 * The init routine is called by the loader after the segment has been
+		 * loaded.
+		 * 
+		 * @return The init address or -1.
+		 */
+		public int getInitAddress() {
+			return initAddress;
+		}
+
+		@Override
+		public String toString() {
+			return "offset=" + offset + " start=" + getAddressString(startAddress) + " end="
+					+ getAddressString(endAddress) + (runAddress >= 0 ? " run=" + getAddressString(runAddress) : "")
+					+ (initAddress >= 0 ? " init=" + getAddressString(initAddress) : "");
+		}
+	}
+
+	/**
+	 * Parser which reads the segments of an executable file in a single pass.
+	 * The content is not copied if it is parsed from an array or a buffer. If it
+	 * is parsed from a stream, only one segment at a time is kept in memory.
+	 */
+	public static final class SegmentParser {
+		private final ByteBuffer buffer;
+		private final InputStream inputStream;
+		private final byte[] streamBuffer;
+		private long offset;
+		private int runAddressLow;
+		private int runAddressHigh;
+
+		/**
+		 * Creates a parser for the content of a byte array.
+		 * 
+		 * @param data
+		 *            The data, not <code>null</code>.
+		 * @param offset
+		 *            The offset of the first segment header, a non-negative
+		 *            integer.
+		 * @param length
+		 *            The length of the content, a non-negative integer.
+		 */
+		public SegmentParser(byte[] data, int offset, int length) {
+			this(getBuffer(data, offset, length));
+		}
+
+		/**
+		 * Creates a parser for the content of a buffer.
+		 * 
+		 * @param buffer
+		 *            The buffer with the content between position and limit, not
+		 *            <code>null</code>. The position of the buffer is not modified.
+		 */
+		public SegmentParser(ByteBuffer buffer) {
+			if (buffer == null) {
+				throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+			}
+			this.buffer = buffer.asReadOnlyBuffer().slice();
+			this.inputStream = null;
+			this.streamBuffer = null;
+			runAddressLow = -1;
+			runAddressHigh = -1;
+		}
+
+		/**
+		 * Creates a parser for the content of a stream.
+		 * 
+		 * @param inputStream
+		 *            The input stream, not <code>null</code>. The stream is not
+		 *            closed by the parser.
+		 */
+		public SegmentParser(InputStream inputStream) {
+			if (inputStream == null) {
+				throw new IllegalArgumentException("Parameter 'inputStream' must not be null.");
+			}
+			this.buffer = null;
+			this.inputStream = inputStream;
+			this.streamBuffer = new byte[MAX_SEGMENT_LENGTH];
+			runAddressLow = -1;
+			runAddressHigh = -1;
+		}
+
+		private static ByteBuffer getBuffer(byte[] data, int offset, int length) {
+			if (data == null) {
+				throw new IllegalArgumentException("Parameter 'data' must not be null.");
+			}
+			if (offset < 0 || length < 0 || offset + length > data.length) {
+				throw new IllegalArgumentException(
+						"Parameters 'offset' and 'length' must specify a range within 'data'. Specified values are "
+								+ offset + " and " + length + " for an array with " + data.length + " bytes.");
+			}
+			return ByteBuffer.wrap(data, offset, length);
+		}
+
+		/**
+		 * Reads the next segment. The first segment must start with the $FFFF
+		 * marker, for the following segments the marker is optional.
+		 * 
+		 * @return The segment or <code>null</code> if the end of the content has
+		 *         been reached.
+		 * @throws ExecutableFileException
+		 *             If the content is not a valid executable file.
+		 * @throws IOException
+		 *             If the stream cannot be read.
+		 */
+		public Segment next() throws IOException {
+			long segmentOffset = offset;
+			int word = readWord(true);
+			if (word < 0) {
+				if (segmentOffset == 0) {
+					throw new ExecutableFileException("Content is empty.");
+				}
+				return null;
+			}
+			if (word == HEADER) {
+				word = readWord(false);
+			} else if (segmentOffset == 0) {
+				throw new ExecutableFileException("Content does not start with $FFFF.");
+			}
+			int startAddress = word;
+			int endAddress = readWord(false);
+			if (endAddress < startAddress) {
+				throw new ExecutableFileException("Segment at offset " + segmentOffset + " has end address "
+						+ getAddressString(endAddress) + " before start address "
+						+ getAddressString(startAddress) + ".");
+			}
+			int length = endAddress - startAddress + 1;
+			ByteBuffer content;
+			if (buffer != null) {
+				if (buffer.remaining() < length) {
+					throw new ExecutableFileException("Segment at offset " + segmentOffset + " has " + length
+							+ " bytes but only " + buffer.remaining() + " bytes are left.");
+				}
+				content = buffer.slice();
+				content.limit(length);
+				buffer.position(buffer.position() + length);
+			} else {
+				int count = 0;
+				while (count < length) {
+					int read = inputStream.read(streamBuffer, count, length - count);
+					if (read < 0) {
+						throw new ExecutableFileException("Segment at offset " + segmentOffset + " has " + length
+								+ " bytes but only " + count + " bytes are left.");
+					}
+					count += read;
+				}
+				content = ByteBuffer.wrap(streamBuffer, 0, length).asReadOnlyBuffer().slice();
+			}
+			offset += length;
+
+			if (startAddress <= RUNAD && endAddress >= RUNAD) {
+				runAddressLow = content.get(RUNAD - startAddress) & 0xff;
+			}
+			if (startAddress <= RUNAD + 1 && endAddress >= RUNAD + 1) {
+				runAddressHigh = content.get(RUNAD + 1 - startAddress) & 0xff;
+			}
+			return new Segment(segmentOffset, startAddress, endAddress, content);
+		}
+
+		/**
+		 * Gets the run address set by the segments read so far.
+		 * 
+		 * @return The run address or -1 if RUNAD ($02E0) has not been set
+		 *         completely.
+		 */
+		public int getRunAddress() {
+			if (runAddressLow < 0 || runAddressHigh < 0) {
+				return -1;
+			}
+			return runAddressLow | runAddressHigh << 8;
+		}
+
+		/**
+		 * Reads a little endian word.
+		 * 
+		 * @param optional
+		 *            <code>true</code> if the end of the content is allowed.
+		 * @return The word or -1 if the end of the content has been reached.
+		 */
+		private int readWord(boolean optional) throws IOException {
+			int low = readByte();
+			if (low < 0 && optional) {
+				return -1;
+			}
+			int high = readByte();
+			if (low < 0 || high < 0) {
+				throw new ExecutableFileException("Segment header is incomplete at offset " + offset + ".");
+			}
+			return low | high << 8;
+		}
+
+		private int readByte() throws IOException {
+			int result;
+			if (buffer != null) {
+				result = buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+			} else {
+				result = inputStream.read();
+			}
+			if (result >= 0) {
+				offset++;
+			}
+			return result;
+		}
+	}
+
+	// Marker at the beginning of the file and optionally before each segment.
+	private static final int HEADER = 0xffff;
+
+	// Maximum number of bytes in a segment.
+	private static final int MAX_SEGMENT_LENGTH = 0x10000;
+
+	/**
+	 * Address of the run address vector RUNAD.
+	 */
+	public static final int RUNAD = 0x2e0;
+
+	/**
+	 * Address of the init address vector INITAD.
+	 */
+	public static final int INITAD = 0x2e2;
+
+	/**
+	 * Gets the hex string for an address.
+	 * 
+	 * @param address
+	 *            The address between $0000 and $FFFF.
+	 * @return The string with leading "$", not <code>null</code>.
+	 */
+	static String getAddressString(int address) {
+		return "$" + HexUtility.getByteValueHexString(address >>> 8)
+				+ HexUtility.getByteValueHexString(address & 0xff);
+	}
+
 	/**
 	 * Determines if a byte array contains a valid Atari executable file.
 	 * 
@@ -0,0 +1,401 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.atari;
+
+import static com.wudsn.tools.base.common.ByteArrayUtility.MASK_FF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DirectoryEntry;
+
+/**
+ * Reader for the SpartaDOS file system, which is also used by RealDOS. Files
+ * and directories are described by chains of sector maps which list the data
+ * sectors. Directories are files with entries of 23 bytes, the first entry
+ * describes the directory itself. The sector maps are read once and cached, so
+ * deep directory trees can be listed and read quickly. The sectors are
+ * accessed through the zero-copy sector buffers of the {@link AtrFile}.
+ * Instances are created by the {@link SpartaDosFileSystemProvider}.
+ * 
+ * @author Peter Dell
+ */
+final class SpartaDosFileSystem implements AtrFileSystem {
+
+	/**
+	 * Data and map sectors of a file.
+	 */
+	private static final class SectorMap {
+		final int[] mapSectors;
+		final int[] dataSectors;
+
+		SectorMap(int[] mapSectors, int[] dataSectors) {
+			this.mapSectors = mapSectors;
+			this.dataSectors = dataSectors;
+		}
+	}
+
+	/**
+	 * Input stream which reads the data sectors of a sector map. Sector number
+	 * 0 in the map denotes a sector filled with zeros.
+	 */
+	private final class SectorMapInputStream extends InputStream {
+		private final int[] dataSectors;
+		private long remaining;
+		private int sectorIndex;
+		private ByteBuffer sector;
+
+		SectorMapInputStream(int[] dataSectors, long size) {
+			this.dataSectors = dataSectors;
+			remaining = size;
+		}
+
+		/**
+		 * Moves to the next data sector.
+		 * 
+		 * @return <code>true</code> if there is data left, <code>false</code> if
+		 *         the end of the file is reached.
+		 * @throws IOException
+		 *             If a sector number is invalid.
+		 */
+		private boolean nextSector() throws IOException {
+			if (sector != null && sector.hasRemaining()) {
+				return true;
+			}
+			if (remaining == 0 || sectorIndex >= dataSectors.length) {
+				return false;
+			}
+			int sectorNumber = dataSectors[sectorIndex++];
+			if (sectorNumber == 0) {
+				sector = ByteBuffer.allocate(atrFile.getSectorSize());
+			} else {
+				try {
+					sector = atrFile.getSectorBuffer(sectorNumber);
+				} catch (AtrException ex) {
+					throw new IOException(ex.getMessage(), ex);
+				}
+			}
+			if (sector.remaining() > remaining) {
+				sector.limit((int) remaining);
+			}
+			remaining -= sector.remaining();
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextSector()) {
+				return -1;
+			}
+			return sector.get() & MASK_FF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (buffer == null) {
+				throw new IllegalArgumentException("Parameter 'buffer' must not be null.");
+			}
+			if (offset < 0 || length < 0 || offset + length > buffer.length) {
+				throw new IndexOutOfBoundsException(
+						"Invalid offset " + offset + " and length " + length + " for buffer length " + buffer.length);
+			}
+			if (length == 0) {
+				return 0;
+			}
+			int count = 0;
+			while (count < length && nextSector()) {
+				int chunk = Math.min(sector.remaining(), length - count);
+				sector.get(buffer, offset + count, chunk);
+				count += chunk;
+			}
+			return count == 0 ? -1 : count;
+		}
+
+		@Override
+		public int available() {
+			return sector == null ? 0 : sector.remaining();
+		}
+	}
+
+	// Fields of the boot sector.
+	private static final int BOOT_MAIN_DIRECTORY_OFFSET = 0x09;
+	private static final int BOOT_FREE_SECTORS_OFFSET = 0x0d;
+	private static final int BOOT_BITMAP_SECTORS_OFFSET = 0x0f;
+	private static final int BOOT_FIRST_BITMAP_SECTOR_OFFSET = 0x10;
+
+	// Sector map sectors start with the links to the next and previous sector
+	// map sector.
+	private static final int SECTOR_MAP_HEADER_SIZE = 4;
+
+	// Directory entries.
+	private static final int ENTRY_SIZE = 23;
+	private static final int ENTRY_SECTOR_MAP_OFFSET = 1;
+	private static final int ENTRY_SIZE_OFFSET = 3;
+	private static final int ENTRY_FILE_NAME_OFFSET = 6;
+	private static final int FILE_NAME_LENGTH = 8;
+	private static final int EXTENSION_LENGTH = 3;
+
+	// Directory entry flags.
+	private static final int FLAG_IN_USE = 0x08;
+	private static final int FLAG_DELETED = 0x10;
+	private static final int FLAG_SUBDIRECTORY = 0x20;
+
+	private final AtrFile atrFile;
+	private final ConcurrentMap<Integer, SectorMap> sectorMaps;
+
+	/**
+	 * Creates a reader.
+	 * 
+	 * @param atrFile
+	 *            The ATR file, not <code>null</code>.
+	 */
+	SpartaDosFileSystem(AtrFile atrFile) {
+		if (atrFile == null) {
+			throw new IllegalArgumentException("Parameter 'atrFile' must not be null.");
+		}
+		this.atrFile = atrFile;
+		sectorMaps = new ConcurrentHashMap<Integer, SectorMap>();
+	}
+
+	/**
+	 * Reads the bitmap of the free sectors.
+	 * 
+	 * @return The bitmap, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the bitmap cannot be read.
+	 */
+	@Override
+	public AtrVtoc getVtoc() throws AtrException {
+		ByteBuffer bootSector = atrFile.getSectorBuffer(1);
+		AtrVtoc result = AtrVtoc.createSpartaDosInstance(atrFile.getDosVersion(), atrFile.getSectorCount(),
+				atrFile.getSectorSize(), getWord(bootSector, BOOT_FIRST_BITMAP_SECTOR_OFFSET),
+				bootSector.get(BOOT_BITMAP_SECTORS_OFFSET) & MASK_FF, getWord(bootSector, BOOT_FREE_SECTORS_OFFSET));
+		int[] bitmapSectorNumbers = result.getVtocSectorNumbers();
+		for (int i = 0; i < bitmapSectorNumbers.length; i++) {
+			result.readSector(i, atrFile.getSectorBuffer(bitmapSectorNumbers[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the files of the main directory and all sub-directories. The file
+	 * names of files in sub-directories are prefixed with the path of the
+	 * sub-directory and the {@link AtrFile#PATH_SEPARATOR}.
+	 * 
+	 * @return The modifiable list of directory entries, may be empty, not
+	 *         <code>null</code>.
+	 * @throws AtrException
+	 *             If a directory cannot be read.
+	 */
+	@Override
+	public List<DirectoryEntry> readDirectory() throws AtrException {
+		List<DirectoryEntry> result = new ArrayList<DirectoryEntry>();
+		int mainDirectorySectorMap = getWord(atrFile.getSectorBuffer(1), BOOT_MAIN_DIRECTORY_OFFSET);
+		readDirectory(mainDirectorySectorMap, "", new HashSet<Integer>(), result);
+		return result;
+	}
+
+	private void readDirectory(int firstMapSector, String path, Set<Integer> visitedDirectories,
+			List<DirectoryEntry> result) throws AtrException {
+		if (!visitedDirectories.add(Integer.valueOf(firstMapSector))) {
+			throw new AtrException("Directory '" + path + "' with sector map " + firstMapSector
+					+ " is contained in itself.");
+		}
+		int[] dataSectors = getSectorMap(firstMapSector).dataSectors;
+
+		// The first entry describes the directory and contains its size.
+		byte[] directory = readContent(dataSectors, ENTRY_SIZE);
+		long size = directory.length < ENTRY_SIZE ? 0 : getTriple(directory, ENTRY_SIZE_OFFSET);
+		directory = readContent(dataSectors, size);
+		byte[] fileNameArray = new byte[FILE_NAME_LENGTH];
+		byte[] extensionArray = new byte[EXTENSION_LENGTH];
+		for (int offset = ENTRY_SIZE; offset + ENTRY_SIZE <= directory.length; offset += ENTRY_SIZE) {
+			int flags = directory[offset] & MASK_FF;
+			if (flags == 0) {
+				break;
+			}
+			if ((flags & FLAG_IN_USE) == 0 || (flags & FLAG_DELETED) != 0) {
+				continue;
+			}
+			System.arraycopy(directory, offset + ENTRY_FILE_NAME_OFFSET, fileNameArray, 0, FILE_NAME_LENGTH);
+			System.arraycopy(directory, offset + ENTRY_FILE_NAME_OFFSET + FILE_NAME_LENGTH, extensionArray, 0,
+					EXTENSION_LENGTH);
+			String fileName = new String(fileNameArray);
+			String extension = new String(extensionArray);
+			int mapSector = getWord(directory, offset + ENTRY_SECTOR_MAP_OFFSET);
+			if ((flags & FLAG_SUBDIRECTORY) != 0) {
+				String directoryName = fileName.trim() + (extension.trim().length() > 0 ? "." + extension.trim() : "");
+				readDirectory(mapSector, path + directoryName + AtrFile.PATH_SEPARATOR, visitedDirectories, result);
+			} else {
+				String dosFileName = path + fileName.trim() + "." + extension.trim();
+				result.add(new DirectoryEntry(fileName + extension, dosFileName, mapSector,
+						getTriple(directory, offset + ENTRY_SIZE_OFFSET)));
+			}
+		}
+	}
+
+	/**
+	 * Gets the binary content of a file.
+	 * 
+	 * @param directoryEntry
+	 *            The directory entry, not <code>null</code>.
+	 * @param usedSectors
+	 *            The list of sector numbers for used sectors or <code>null</code>.
+	 *            The sector map sectors are added before the data sectors.
+	 * @return The binary content, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the sector map or a data sector cannot be read.
+	 */
+	@Override
+	public byte[] getFileContent(DirectoryEntry directoryEntry, List<Integer> usedSectors) throws AtrException {
+		if (directoryEntry == null) {
+			throw new IllegalArgumentException("Parameter 'directoryEntry' must not be null.");
+		}
+		SectorMap sectorMap = getSectorMap(directoryEntry.getStartSector());
+		if (usedSectors != null) {
+			for (int sectorNumber : sectorMap.mapSectors) {
+				usedSectors.add(Integer.valueOf(sectorNumber));
+			}
+			for (int sectorNumber : sectorMap.dataSectors) {
+				if (sectorNumber != 0) {
+					usedSectors.add(Integer.valueOf(sectorNumber));
+				}
+			}
+		}
+		return readContent(sectorMap.dataSectors, directoryEntry.getSize());
+	}
+
+	/**
+	 * Gets an input stream which reads the binary content of a file.
+	 * 
+	 * @param directoryEntry
+	 *            The directory entry, not <code>null</code>.
+	 * @return The input stream, not <code>null</code>.
+	 * @throws AtrException
+	 *             If the sector map cannot be read.
+	 */
+	@Override
+	public InputStream getFileContentInputStream(DirectoryEntry directoryEntry) throws AtrException {
+		if (directoryEntry == null) {
+			throw new IllegalArgumentException("Parameter 'directoryEntry' must not be null.");
+		}
+		return new SectorMapInputStream(getSectorMap(directoryEntry.getStartSector()).dataSectors,
+				directoryEntry.getSize());
+	}
+
+	private byte[] readContent(int[] dataSectors, long size) throws AtrException {
+		size = Math.min(size, (long) dataSectors.length * atrFile.getSectorSize());
+		ByteArrayOutputStream bos = new ByteArrayOutputStream((int) size);
+		InputStream inputStream = new SectorMapInputStream(dataSectors, size);
+		byte[] buffer = new byte[atrFile.getSectorSize()];
+		try {
+			int count;
+			while ((count = inputStream.read(buffer, 0, buffer.length)) > 0) {
+				bos.write(buffer, 0, count);
+			}
+		} catch (IOException ex) {
+			throw new AtrException(ex.getMessage(), ex);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Gets the sector map of a file. Sector maps are read once and cached.
+	 * 
+	 * @param firstMapSector
+	 *            The first sector map sector of the file.
+	 * @return The sector map, not <code>null</code>.
+	 * @throws AtrException
+	 *             If a sector map sector is invalid.
+	 */
+	private SectorMap getSectorMap(int firstMapSector) throws AtrException {
+		Integer key = Integer.valueOf(firstMapSector);
+		SectorMap result = sectorMaps.get(key);
+		if (result == null) {
+			result = readSectorMap(firstMapSector);
+			SectorMap previous = sectorMaps.putIfAbsent(key, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	private SectorMap readSectorMap(int firstMapSector) throws AtrException {
+		int sectorCount = atrFile.getSectorCount();
+		List<Integer> mapSectors = new ArrayList<Integer>();
+		int[] dataSectors = new int[64];
+		int dataSectorCount = 0;
+		int mapSector = firstMapSector;
+		while (mapSector != 0) {
+			if (mapSectors.size() >= sectorCount) {
+				throw new AtrException("Sector map chain starting at sector " + firstMapSector
+						+ " contains a cycle.");
+			}
+			mapSectors.add(Integer.valueOf(mapSector));
+			ByteBuffer sector = atrFile.getSectorBuffer(mapSector);
+			int size = sector.limit();
+			for (int offset = SECTOR_MAP_HEADER_SIZE; offset + 1 < size; offset += 2) {
+				if (dataSectorCount == dataSectors.length) {
+					int[] newDataSectors = new int[dataSectors.length * 2];
+					System.arraycopy(dataSectors, 0, newDataSectors, 0, dataSectorCount);
+					dataSectors = newDataSectors;
+				}
+				dataSectors[dataSectorCount++] = getWord(sector, offset);
+			}
+			mapSector = getWord(sector, 0);
+		}
+
+		// Trailing unused entries of the last sector map are not part of the
+		// file.
+		while (dataSectorCount > 0 && dataSectors[dataSectorCount - 1] == 0) {
+			dataSectorCount--;
+		}
+		int[] resultMapSectors = new int[mapSectors.size()];
+		for (int i = 0; i < resultMapSectors.length; i++) {
+			resultMapSectors[i] = mapSectors.get(i).intValue();
+		}
+		int[] resultDataSectors = new int[dataSectorCount];
+		System.arraycopy(dataSectors, 0, resultDataSectors, 0, dataSectorCount);
+		return new SectorMap(resultMapSectors, resultDataSectors);
+	}
+
+	private static int getWord(ByteBuffer buffer, int offset) {
+		return (buffer.get(offset) & MASK_FF) | (buffer.get(offset + 1) & MASK_FF) << 8;
+	}
+
+	private static int getWord(byte[] buffer, int offset) {
+		return (buffer[offset] & MASK_FF) | (buffer[offset + 1] & MASK_FF) << 8;
+	}
+
+	private static long getTriple(byte[] buffer, int offset) {
+		return getWord(buffer, offset) | (buffer[offset + 2] & MASK_FF) << 16;
+	}
+}
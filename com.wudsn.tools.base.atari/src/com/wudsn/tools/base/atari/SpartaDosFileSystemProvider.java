@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of The!Cart Studio distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with The!Cart Studio. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.atari;
+
+import com.wudsn.tools.base.atari.AtrFile.AtrException;
+import com.wudsn.tools.base.atari.AtrFile.DosVersion;
+
+/**
+ * File system provider for SpartaDOS and RealDOS.
+ * 
+ * @author Peter Dell
+ */
+public final class SpartaDosFileSystemProvider implements AtrFileSystem.Provider {
+
+	// Boot sector signatures.
+	private static final byte[] SPARTADOS_BOOT_SIGNATURE = { 0x00, 0x03, 0x00, 0x07, 0x40, 0x07, 0x4c,
+			(byte) 0x80, 0x07 };
+	private static final byte[] REALDOS_BOOT_SIGNATURE = { 0x00, 0x03, 0x00, 0x30, (byte) 0xe0, 0x07, 0x4c,
+			(byte) 0x80, 0x30 };
+
+	/**
+	 * Creates a provider. Called by the {@link java.util.ServiceLoader}.
+	 */
+	public SpartaDosFileSystemProvider() {
+
+	}
+
+	@Override
+	public DosVersion detectDosVersion(AtrFile atrFile) throws AtrException {
+		if (atrFile == null) {
+			throw new IllegalArgumentException("Parameter 'atrFile' must not be null.");
+		}
+		if (AtrFile.startsWith(atrFile.getSectorBuffer(1), SPARTADOS_BOOT_SIGNATURE)) {
+			return DosVersion.SPARTADOS;
+		}
+		if (AtrFile.startsWith(atrFile.getSectorBuffer(1), REALDOS_BOOT_SIGNATURE)) {
+			return DosVersion.REALDOS;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasDirectory(DosVersion dosVersion) {
+		return dosVersion == DosVersion.SPARTADOS || dosVersion == DosVersion.REALDOS;
+	}
+
+	@Override
+	public AtrFileSystem createFileSystem(AtrFile atrFile) {
+		return new SpartaDosFileSystem(atrFile);
+	}
+}
@@ -53,6 +53,7 @@ public final class Messages extends NLS {
 	public static Message E220;
 	public static Message E221;
 	public static Message E222;
+	public static Message E223;
 
 	// Console and parser
 	public static Message E250;
@@ -19,6 +19,9 @@
 
 package com.wudsn.tools.base.common;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.zip.CRC32;
 
 public final class ByteArrayUtility {
@@ -28,6 +31,10 @@ public final class ByteArrayUtility {
 	public static final int KB = 1024;
 	public static final int MB = KB * KB;
 
+	// Size of the chunks in which content outside of a heap array is copied
+	// for the CRC32 computation.
+	private static final int CRC32_CHUNK_SIZE = 64 * KB;
+
 	/**
 	 * Static array of all one-byte upper case hex numbers (00...FF)
 	 */
@@ -53,6 +60,22 @@ public final class ByteArrayUtility {
 
 	}
 
+	/**
+	 * Finds the first occurrence of a pattern with a simple scan. To search
+	 * large content or to search the same pattern repeatedly, use
+	 * {@link BytePattern}. To search many patterns at once, use
+	 * {@link BytePatternSet}.
+	 * 
+	 * @param content
+	 *            The binary content, not <code>null</code>
+	 * @param startOffset
+	 *            The offset to start at, a non-negative integer.
+	 * @param length
+	 *            The number of bytes to search, a non-negative integer.
+	 * @param pattern
+	 *            The pattern, not <code>null</code>.
+	 * @return The offset of the first occurrence or -1.
+	 */
 	public static int getIndexOf(byte[] content, int startOffset, int length, byte[] pattern) {
 		if (content == null) {
 			throw new IllegalArgumentException("Parameter 'content' must not be null.");
@@ -117,4 +140,95 @@ public final class ByteArrayUtility {
 		int result = (int) crc32.getValue();
 		return result;
 	}
+
+	/**
+	 * Compute the CRC32 value for a range of a byte array.
+	 * 
+	 * @param content
+	 *            The binary content, not <code>null</code>
+	 * @param offset
+	 *            The offset of the first byte, a non-negative integer.
+	 * @param length
+	 *            The number of bytes, a non-negative integer.
+	 * 
+	 * @return The unsigned CRC32 value for the range.
+	 */
+	public static long getCRC32(byte[] content, int offset, int length) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (offset < 0 || length < 0 || offset + length > content.length || offset + length < 0) {
+			throw new IllegalArgumentException("Parameters 'offset' and 'length' with values " + offset + " and "
+					+ length + " do not specify a valid range of a byte array of length " + content.length + ".");
+		}
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(content, offset, length);
+		return crc32.getValue();
+	}
+
+	/**
+	 * Compute the CRC32 value for the remaining bytes of a buffer. Heap
+	 * buffers are processed in place. Direct and mapped buffers are copied in
+	 * chunks. The position of the buffer is not modified.
+	 * 
+	 * @param content
+	 *            The binary content, not <code>null</code>
+	 * 
+	 * @return The unsigned CRC32 value for the content.
+	 */
+	public static long getCRC32(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+
+		CRC32 crc32 = new CRC32();
+		if (content.hasArray()) {
+			crc32.update(content.array(), content.arrayOffset() + content.position(), content.remaining());
+		} else {
+			ByteBuffer source = content.duplicate();
+			byte[] chunk = new byte[Math.min(CRC32_CHUNK_SIZE, source.remaining())];
+			while (source.hasRemaining()) {
+				int length = Math.min(chunk.length, source.remaining());
+				source.get(chunk, 0, length);
+				crc32.update(chunk, 0, length);
+			}
+		}
+		return crc32.getValue();
+	}
+
+	/**
+	 * Compute the CRC32 value for the complete content of a file channel. The
+	 * content is read in chunks with absolute reads, so the file is never
+	 * loaded into memory completely and the position of the channel is not
+	 * modified.
+	 * 
+	 * @param channel
+	 *            The file channel, not <code>null</code>. The channel is not
+	 *            closed.
+	 * 
+	 * @return The unsigned CRC32 value for the content.
+	 * @throws IOException
+	 *             If the channel cannot be read.
+	 */
+	public static long getCRC32(FileChannel channel) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+
+		CRC32 crc32 = new CRC32();
+		long size = channel.size();
+		ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CRC32_CHUNK_SIZE, Math.max(1, size)));
+		long position = 0;
+		while (position < size) {
+			chunk.clear();
+			int count = channel.read(chunk, position);
+			if (count < 0) {
+				break;
+			}
+			crc32.update(chunk.array(), 0, count);
+			position += count;
+		}
+		return crc32.getValue();
+	}
 }
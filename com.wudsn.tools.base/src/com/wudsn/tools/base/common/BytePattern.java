@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of a WUDSN software distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the WUDSN software distribution. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Preprocessed byte pattern for fast searching with the Boyer-Moore-Horspool
+ * algorithm. The shift table is computed once, so the same instance can be
+ * used to search any number of arrays and buffers, also by several threads
+ * concurrently. For searching many patterns at once see
+ * {@link BytePatternSet}.
+ * 
+ * @author Peter Dell
+ */
+public final class BytePattern {
+
+	private final byte[] pattern;
+
+	// Shift per byte value if the last byte of the window mismatches.
+	private final int[] shifts;
+
+	/**
+	 * Creates a pattern.
+	 * 
+	 * @param pattern
+	 *            The bytes of the pattern, not empty, not <code>null</code>.
+	 *            The array is copied.
+	 */
+	public BytePattern(byte[] pattern) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("Parameter 'pattern' must not be null.");
+		}
+		if (pattern.length == 0) {
+			throw new IllegalArgumentException("Parameter 'pattern' must not be empty.");
+		}
+		this.pattern = pattern.clone();
+		shifts = new int[256];
+		int lastIndex = pattern.length - 1;
+		for (int i = 0; i < shifts.length; i++) {
+			shifts[i] = pattern.length;
+		}
+		for (int i = 0; i < lastIndex; i++) {
+			shifts[pattern[i] & 0xff] = lastIndex - i;
+		}
+	}
+
+	/**
+	 * Gets the length of the pattern.
+	 * 
+	 * @return The length, a positive integer.
+	 */
+	public int getLength() {
+		return pattern.length;
+	}
+
+	/**
+	 * Gets the bytes of the pattern.
+	 * 
+	 * @return The modifiable copy of the bytes, not <code>null</code>.
+	 */
+	public byte[] getBytes() {
+		return pattern.clone();
+	}
+
+	/**
+	 * Finds the first occurrence of the pattern in a range of a byte array.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the first byte of the range, a non-negative
+	 *            integer.
+	 * @param length
+	 *            The number of bytes of the range, a non-negative integer.
+	 * @return The offset of the first occurrence which lies completely within
+	 *         the range or -1 if there is no such occurrence.
+	 */
+	public int getIndexOf(byte[] content, int offset, int length) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (offset < 0 || length < 0 || offset + length > content.length || offset + length < 0) {
+			throw new IllegalArgumentException("Parameters 'offset' and 'length' with values " + offset + " and "
+					+ length + " do not specify a valid range of a byte array of length " + content.length + ".");
+		}
+		int lastIndex = pattern.length - 1;
+		byte lastByte = pattern[lastIndex];
+		int endOffset = offset + length - pattern.length;
+		int i = offset;
+		while (i <= endOffset) {
+			byte b = content[i + lastIndex];
+			if (b == lastByte) {
+				int j = lastIndex - 1;
+				while (j >= 0 && content[i + j] == pattern[j]) {
+					j--;
+				}
+				if (j < 0) {
+					return i;
+				}
+			}
+			i += shifts[b & 0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first occurrence of the pattern in the remaining bytes of a
+	 * buffer. Heap buffers are searched in their backing array, direct and
+	 * mapped buffers with absolute reads. The position of the buffer is not
+	 * modified.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @return The index of the first occurrence in the buffer, between the
+	 *         position and the limit, or -1 if there is no such occurrence.
+	 */
+	public int getIndexOf(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (content.hasArray()) {
+			int index = getIndexOf(content.array(), content.arrayOffset() + content.position(),
+					content.remaining());
+			return index < 0 ? -1 : index - content.arrayOffset();
+		}
+		int lastIndex = pattern.length - 1;
+		byte lastByte = pattern[lastIndex];
+		int endIndex = content.limit() - pattern.length;
+		int i = content.position();
+		while (i <= endIndex) {
+			byte b = content.get(i + lastIndex);
+			if (b == lastByte) {
+				int j = lastIndex - 1;
+				while (j >= 0 && content.get(i + j) == pattern[j]) {
+					j--;
+				}
+				if (j < 0) {
+					return i;
+				}
+			}
+			i += shifts[b & 0xff];
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return ByteArrayUtility.toHexString(pattern);
+	}
+}
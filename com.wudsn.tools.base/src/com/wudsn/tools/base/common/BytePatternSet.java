@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of a WUDSN software distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the WUDSN software distribution. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.wudsn.tools.base.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of byte patterns which are searched at the same time with the
+ * Aho-Corasick algorithm. The patterns are compiled into a deterministic
+ * automaton with one transition per state and byte value, so the content is
+ * scanned exactly once, independent of the number of patterns. The same
+ * instance can be used by several threads concurrently.
+ * 
+ * @author Peter Dell
+ */
+public final class BytePatternSet {
+
+	/**
+	 * Occurrence of a pattern.
+	 */
+	public static final class Match {
+		private final int patternIndex;
+		private final int index;
+
+		Match(int patternIndex, int index) {
+			this.patternIndex = patternIndex;
+			this.index = index;
+		}
+
+		/**
+		 * Gets the index of the pattern in the list of patterns of the set.
+		 * 
+		 * @return The index of the pattern, a non-negative integer.
+		 */
+		public int getPatternIndex() {
+			return patternIndex;
+		}
+
+		/**
+		 * Gets the index of the first byte of the occurrence in the content.
+		 * 
+		 * @return The index, a non-negative integer.
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public String toString() {
+			return "patternIndex=" + patternIndex + " index=" + index;
+		}
+	}
+
+	private static final int[] NO_PATTERN_INDEXES = new int[0];
+
+	private final List<BytePattern> patterns;
+	private final int[] patternLengths;
+
+	// Next state per state and byte value, at index state * 256 + byte value.
+	private final int[] transitions;
+
+	// Indexes of the patterns which end in a state.
+	private final int[][] patternIndexes;
+
+	/**
+	 * Creates a pattern set.
+	 * 
+	 * @param patterns
+	 *            The patterns, may be empty, not <code>null</code>.
+	 */
+	public BytePatternSet(List<BytePattern> patterns) {
+		if (patterns == null) {
+			throw new IllegalArgumentException("Parameter 'patterns' must not be null.");
+		}
+		this.patterns = Collections.unmodifiableList(new ArrayList<BytePattern>(patterns));
+		patternLengths = new int[patterns.size()];
+
+		// Build the trie. State 0 is the root.
+		int maxStateCount = 1;
+		for (BytePattern pattern : this.patterns) {
+			maxStateCount += pattern.getLength();
+		}
+		int[] trie = new int[maxStateCount * 256];
+		Arrays.fill(trie, -1);
+		List<int[]> statePatternIndexes = new ArrayList<int[]>();
+		statePatternIndexes.add(NO_PATTERN_INDEXES);
+		int stateCount = 1;
+		for (int p = 0; p < this.patterns.size(); p++) {
+			byte[] bytes = this.patterns.get(p).getBytes();
+			patternLengths[p] = bytes.length;
+			int state = 0;
+			for (byte b : bytes) {
+				int index = state * 256 + (b & 0xff);
+				if (trie[index] < 0) {
+					trie[index] = stateCount++;
+					statePatternIndexes.add(NO_PATTERN_INDEXES);
+				}
+				state = trie[index];
+			}
+			statePatternIndexes.set(state, append(statePatternIndexes.get(state), p));
+		}
+
+		// Compute the failure links breadth first and resolve all missing
+		// transitions, which turns the trie into a deterministic automaton.
+		transitions = Arrays.copyOf(trie, stateCount * 256);
+		patternIndexes = statePatternIndexes.toArray(new int[stateCount][]);
+		int[] failures = new int[stateCount];
+		int[] queue = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+		for (int b = 0; b < 256; b++) {
+			int next = transitions[b];
+			if (next < 0) {
+				transitions[b] = 0;
+			} else {
+				failures[next] = 0;
+				queue[tail++] = next;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			int failure = failures[state];
+			if (patternIndexes[failure].length > 0) {
+				patternIndexes[state] = merge(patternIndexes[state], patternIndexes[failure]);
+			}
+			for (int b = 0; b < 256; b++) {
+				int index = state * 256 + b;
+				int next = transitions[index];
+				if (next < 0) {
+					transitions[index] = transitions[failure * 256 + b];
+				} else {
+					failures[next] = transitions[failure * 256 + b];
+					queue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	private static int[] append(int[] array, int value) {
+		int[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = value;
+		return result;
+	}
+
+	private static int[] merge(int[] array1, int[] array2) {
+		int[] result = Arrays.copyOf(array1, array1.length + array2.length);
+		System.arraycopy(array2, 0, result, array1.length, array2.length);
+		return result;
+	}
+
+	/**
+	 * Gets the patterns of the set.
+	 * 
+	 * @return The unmodifiable list of patterns, may be empty, not
+	 *         <code>null</code>.
+	 */
+	public List<BytePattern> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Finds all occurrences of all patterns in a range of a byte array,
+	 * including overlapping occurrences.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the first byte of the range, a non-negative
+	 *            integer.
+	 * @param length
+	 *            The number of bytes of the range, a non-negative integer.
+	 * @return The modifiable list of matches in the order of their last byte,
+	 *         may be empty, not <code>null</code>.
+	 */
+	public List<Match> getMatches(byte[] content, int offset, int length) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (offset < 0 || length < 0 || offset + length > content.length || offset + length < 0) {
+			throw new IllegalArgumentException("Parameters 'offset' and 'length' with values " + offset + " and "
+					+ length + " do not specify a valid range of a byte array of length " + content.length + ".");
+		}
+		List<Match> result = new ArrayList<Match>();
+		int state = 0;
+		int endOffset = offset + length;
+		for (int i = offset; i < endOffset; i++) {
+			state = transitions[state * 256 + (content[i] & 0xff)];
+			int[] indexes = patternIndexes[state];
+			for (int p : indexes) {
+				result.add(new Match(p, i + 1 - patternLengths[p]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds all occurrences of all patterns in the remaining bytes of a
+	 * buffer, including overlapping occurrences. The position of the buffer is
+	 * not modified.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @return The modifiable list of matches in the order of their last byte,
+	 *         may be empty, not <code>null</code>. The indexes of the matches
+	 *         are indexes in the buffer.
+	 */
+	public List<Match> getMatches(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (content.hasArray()) {
+			List<Match> result = getMatches(content.array(), content.arrayOffset() + content.position(),
+					content.remaining());
+			if (content.arrayOffset() != 0) {
+				for (int i = 0; i < result.size(); i++) {
+					Match match = result.get(i);
+					result.set(i, new Match(match.patternIndex, match.index - content.arrayOffset()));
+				}
+			}
+			return result;
+		}
+		List<Match> result = new ArrayList<Match>();
+		int state = 0;
+		int limit = content.limit();
+		for (int i = content.position(); i < limit; i++) {
+			state = transitions[state * 256 + (content.get(i) & 0xff)];
+			int[] indexes = patternIndexes[state];
+			for (int p : indexes) {
+				result.add(new Match(p, i + 1 - patternLengths[p]));
+			}
+		}
+		return result;
+	}
+}
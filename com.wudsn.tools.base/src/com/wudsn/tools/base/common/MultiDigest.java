@@ -0,0 +1,347 @@
+/**
+ * Copyright (C) 2013 - 2026 <a href="https://www.wudsn.com" target="_top">Peter Dell</a>
+ *
+ * This file is part of a WUDSN software distribution.
+ * 
+ * The!Cart Studio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * The!Cart Studio distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the WUDSN software distribution. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.wudsn.tools.base.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Computes CRC32, MD5 and optionally SHA-1 of the same content in a single
+ * pass. The content is processed in chunks, so all digests read a chunk while
+ * it is still in the CPU cache. An instance is not thread-safe, but each
+ * thread can reuse its own instance via {@link #getThreadInstance(boolean)}.
+ * 
+ * @author Peter Dell
+ */
+public final class MultiDigest {
+
+	/**
+	 * The digests of a content.
+	 */
+	public static final class Result {
+		private final long size;
+		private final long crc32;
+		private final byte[] md5;
+		private final byte[] sha1;
+
+		Result(long size, long crc32, byte[] md5, byte[] sha1) {
+			this.size = size;
+			this.crc32 = crc32;
+			this.md5 = md5;
+			this.sha1 = sha1;
+		}
+
+		/**
+		 * Gets the number of bytes of the content.
+		 * 
+		 * @return The number of bytes, a non-negative integer.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Gets the CRC32 of the content.
+		 * 
+		 * @return The CRC32, an unsigned 32 bit value.
+		 */
+		public long getCRC32() {
+			return crc32;
+		}
+
+		/**
+		 * Gets the MD5 digest of the content.
+		 * 
+		 * @return The modifiable copy of the 16 bytes of the digest, not
+		 *         <code>null</code>.
+		 */
+		public byte[] getMD5() {
+			return md5.clone();
+		}
+
+		/**
+		 * Gets the MD5 digest of the content.
+		 * 
+		 * @return The upper case hex string of the digest, not
+		 *         <code>null</code>.
+		 */
+		public String getMD5HexString() {
+			return ByteArrayUtility.toHexString(md5);
+		}
+
+		/**
+		 * Gets the SHA-1 digest of the content.
+		 * 
+		 * @return The modifiable copy of the 20 bytes of the digest or
+		 *         <code>null</code> if SHA-1 was not computed.
+		 */
+		public byte[] getSHA1() {
+			return sha1 == null ? null : sha1.clone();
+		}
+
+		/**
+		 * Gets the SHA-1 digest of the content.
+		 * 
+		 * @return The upper case hex string of the digest or <code>null</code>
+		 *         if SHA-1 was not computed.
+		 */
+		public String getSHA1HexString() {
+			return sha1 == null ? null : ByteArrayUtility.toHexString(sha1);
+		}
+
+		@Override
+		public String toString() {
+			return "size=" + size + " crc32=" + HexUtility.getLongValueHexString(crc32, 8) + " md5="
+					+ getMD5HexString() + (sha1 != null ? " sha1=" + getSHA1HexString() : "");
+		}
+	}
+
+	private static final int CHUNK_SIZE = 64 * ByteArrayUtility.KB;
+
+	private static final ThreadLocal<MultiDigest> threadInstances = new ThreadLocal<MultiDigest>() {
+		@Override
+		protected MultiDigest initialValue() {
+			return new MultiDigest(false);
+		}
+	};
+
+	private static final ThreadLocal<MultiDigest> threadInstancesWithSHA1 = new ThreadLocal<MultiDigest>() {
+		@Override
+		protected MultiDigest initialValue() {
+			return new MultiDigest(true);
+		}
+	};
+
+	private final CRC32 crc32;
+	private final MessageDigest md5;
+	private final MessageDigest sha1;
+	private long size;
+
+	// Buffer for content which is not in a heap array, created on demand.
+	private byte[] chunk;
+
+	/**
+	 * Creates a multi digest.
+	 * 
+	 * @param sha1
+	 *            <code>true</code> if SHA-1 shall also be computed.
+	 */
+	public MultiDigest(boolean sha1) {
+		crc32 = new CRC32();
+		md5 = getMessageDigest("MD5");
+		this.sha1 = sha1 ? getMessageDigest("SHA-1") : null;
+	}
+
+	private static MessageDigest getMessageDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform must support MD5 and SHA-1.
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Gets the instance of the current thread. The instance is reset.
+	 * 
+	 * @param sha1
+	 *            <code>true</code> if SHA-1 shall also be computed.
+	 * @return The instance, not <code>null</code>.
+	 */
+	public static MultiDigest getThreadInstance(boolean sha1) {
+		MultiDigest result = (sha1 ? threadInstancesWithSHA1 : threadInstances).get();
+		result.reset();
+		return result;
+	}
+
+	/**
+	 * Computes the digests of a byte array.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param sha1
+	 *            <code>true</code> if SHA-1 shall also be computed.
+	 * @return The result, not <code>null</code>.
+	 */
+	public static Result digest(byte[] content, boolean sha1) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		MultiDigest multiDigest = getThreadInstance(sha1);
+		multiDigest.update(content, 0, content.length);
+		return multiDigest.digest();
+	}
+
+	/**
+	 * Computes the digests of the remaining bytes of a buffer. The position of
+	 * the buffer is not modified.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param sha1
+	 *            <code>true</code> if SHA-1 shall also be computed.
+	 * @return The result, not <code>null</code>.
+	 */
+	public static Result digest(ByteBuffer content, boolean sha1) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		MultiDigest multiDigest = getThreadInstance(sha1);
+		multiDigest.update(content);
+		return multiDigest.digest();
+	}
+
+	/**
+	 * Computes the digests of the remaining content of a channel.
+	 * 
+	 * @param channel
+	 *            The channel, not <code>null</code>. The channel is not closed.
+	 * @param sha1
+	 *            <code>true</code> if SHA-1 shall also be computed.
+	 * @return The result, not <code>null</code>.
+	 * @throws IOException
+	 *             If the channel cannot be read.
+	 */
+	public static Result digest(ReadableByteChannel channel, boolean sha1) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+		MultiDigest multiDigest = getThreadInstance(sha1);
+		multiDigest.update(channel);
+		return multiDigest.digest();
+	}
+
+	/**
+	 * Resets all digests.
+	 */
+	public void reset() {
+		crc32.reset();
+		md5.reset();
+		if (sha1 != null) {
+			sha1.reset();
+		}
+		size = 0;
+	}
+
+	/**
+	 * Updates all digests with a range of a byte array.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 * @param offset
+	 *            The offset of the first byte, a non-negative integer.
+	 * @param length
+	 *            The number of bytes, a non-negative integer.
+	 */
+	public void update(byte[] content, int offset, int length) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (offset < 0 || length < 0 || offset + length > content.length || offset + length < 0) {
+			throw new IllegalArgumentException("Parameters 'offset' and 'length' with values " + offset + " and "
+					+ length + " do not specify a valid range of a byte array of length " + content.length + ".");
+		}
+		int endOffset = offset + length;
+		while (offset < endOffset) {
+			int chunkLength = Math.min(CHUNK_SIZE, endOffset - offset);
+			crc32.update(content, offset, chunkLength);
+			md5.update(content, offset, chunkLength);
+			if (sha1 != null) {
+				sha1.update(content, offset, chunkLength);
+			}
+			offset += chunkLength;
+		}
+		size += length;
+	}
+
+	/**
+	 * Updates all digests with the remaining bytes of a buffer. Direct and
+	 * mapped buffers are copied chunk by chunk into an internal buffer. The
+	 * position of the buffer is not modified.
+	 * 
+	 * @param content
+	 *            The content, not <code>null</code>.
+	 */
+	public void update(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("Parameter 'content' must not be null.");
+		}
+		if (content.hasArray()) {
+			update(content.array(), content.arrayOffset() + content.position(), content.remaining());
+			return;
+		}
+		ByteBuffer source = content.duplicate();
+		byte[] buffer = getChunk();
+		while (source.hasRemaining()) {
+			int length = Math.min(buffer.length, source.remaining());
+			source.get(buffer, 0, length);
+			update(buffer, 0, length);
+		}
+	}
+
+	/**
+	 * Updates all digests with the remaining content of a channel.
+	 * 
+	 * @param channel
+	 *            The channel, not <code>null</code>. The channel is not closed.
+	 * @return The number of bytes read, a non-negative integer.
+	 * @throws IOException
+	 *             If the channel cannot be read.
+	 */
+	public long update(ReadableByteChannel channel) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter 'channel' must not be null.");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(getChunk());
+		long result = 0;
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				update(buffer.array(), 0, buffer.position());
+				result += buffer.position();
+				buffer.clear();
+			}
+		}
+		update(buffer.array(), 0, buffer.position());
+		result += buffer.position();
+		return result;
+	}
+
+	private byte[] getChunk() {
+		if (chunk == null) {
+			chunk = new byte[CHUNK_SIZE];
+		}
+		return chunk;
+	}
+
+	/**
+	 * Completes the computation and resets the digests.
+	 * 
+	 * @return The result, not <code>null</code>.
+	 */
+	public Result digest() {
+		Result result = new Result(size, crc32.getValue(), md5.digest(), sha1 == null ? null : sha1.digest());
+		reset();
+		return result;
+	}
+}
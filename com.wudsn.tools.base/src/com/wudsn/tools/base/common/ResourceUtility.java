@@ -197,6 +197,13 @@ public final class ResourceUtility {
 
 	}
 
+	private static URL getURL(String path) {
+		// If there is no loader, the program was launched using the Java
+		// boot class path and the system class loader must be used.
+		ClassLoader loader = ResourceUtility.class.getClassLoader();
+		return (loader == null) ? ClassLoader.getSystemResource(path) : loader.getResource(path);
+	}
+
 	/**
 	 * Self implemented logic to bypass the bug described in
 	 * <a href="https://bugs.sun.com/view_bug.do?bug_id=4523159">JDK-4523159 :
@@ -209,10 +216,7 @@ public final class ResourceUtility {
 		if (path == null) {
 			throw new IllegalArgumentException("Parameter 'path' must not be null.");
 		}
-		// If there is no loader, the program was launched using the Java
-		// boot class path and the system class loader must be used.
-		ClassLoader loader = ResourceUtility.class.getClassLoader();
-		URL url = (loader == null) ? ClassLoader.getSystemResource(path) : loader.getResource(path);
+		URL url = getURL(path);
 		InputStream result = null;
 		try {
 			if (url != null) {
@@ -235,6 +239,43 @@ public final class ResourceUtility {
 		return result;
 	}
 
+	/**
+	 * Gets the length of a resource without reading its content. For files the
+	 * length is taken from the file system, for entries of archives from the
+	 * archive directory.
+	 * 
+	 * @param path The resource path, not empty, not <code>null</code>.
+	 * @return The length in bytes or <code>-1</code> if the resource was not
+	 *         found or its length is not known.
+	 */
+	public static long getResourceLength(String path) {
+		if (path == null) {
+			throw new IllegalArgumentException("Parameter 'path' must not be null.");
+		}
+		if (StringUtility.isEmpty(path)) {
+			throw new IllegalArgumentException("Parameter 'path' must not be empty.");
+		}
+		URL url = getURL(path);
+		if (url == null) {
+			return -1;
+		}
+		if (url.getProtocol().equals("file")) {
+			try {
+				File file = new File(url.toURI());
+				return file.isFile() ? file.length() : -1;
+			} catch (URISyntaxException ex) {
+				return -1;
+			} catch (IllegalArgumentException ex) {
+				return -1;
+			}
+		}
+		try {
+			return url.openConnection().getContentLength();
+		} catch (IOException ex) {
+			return -1;
+		}
+	}
+
 	/**
 	 * Loads a resource as byte array.
 	 * 